@@ -72,4 +72,12 @@ dependencies {
     testImplementation(libs.junit)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
-}
\ No newline at end of file
+}
+// Rebuilds src/main/assets/navmap/block_n.navmap from the Python map sources.
+// Run after editing map_building.py or the corridor graph: ./gradlew :app:compileNavMap
+tasks.register<Exec>("compileNavMap") {
+    group = "build"
+    description = "Compiles the building map into the binary navmap asset."
+    workingDir = file("src/main/python")
+    commandLine("python3", "-B", "navmap.py")
+}
@@ -0,0 +1,136 @@
+// AnalysisGovernor.java
+
+package com.example.mp;
+
+import androidx.annotation.NonNull;
+import java.util.Locale;
+
+/**
+ * Decides which camera frames are worth analysing and at what resolution.
+ * Keeps an exponentially weighted average of the time Python spends per frame
+ * and combines it with the navigation state: frames are skipped so analysis
+ * stays within a share of one core, each state has its own minimum interval
+ * (no extra delay while a code is being locked on, no frames after arrival),
+ * and while nothing is in view a slow device scans at half resolution.
+ * Owned by the analysis thread.
+ */
+final class AnalysisGovernor {
+
+    /** Snapshot of the governor's current decisions. */
+    static final class Metrics {
+        final String state;
+        final float averageProcessingMs;
+        final long minIntervalMs;
+        final int decimation;
+        final long processedFrames;
+        final long skippedFrames;
+
+        Metrics(String state, float averageProcessingMs, long minIntervalMs, int decimation,
+                long processedFrames, long skippedFrames) {
+            this.state = state;
+            this.averageProcessingMs = averageProcessingMs;
+            this.minIntervalMs = minIntervalMs;
+            this.decimation = decimation;
+            this.processedFrames = processedFrames;
+            this.skippedFrames = skippedFrames;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s avg=%.1fms interval=%dms decimation=%d processed=%d skipped=%d",
+                    state, averageProcessingMs, minIntervalMs, decimation, processedFrames, skippedFrames);
+        }
+    }
+
+    // Minimum time between analysed frames per state
+    private static final long SCANNING_INTERVAL_MS = 150;
+    private static final long TRACKING_INTERVAL_MS = 0;
+    private static final long NAVIGATING_INTERVAL_MS = 100;
+    private static final long STOPPED = Long.MAX_VALUE;
+
+    private static final float EWMA_WEIGHT = 0.2f;
+    // Hysteresis for dropping to half resolution and returning to full
+    private static final float DECIMATE_ABOVE = 1.0f;
+    private static final float RESTORE_BELOW = 0.4f;
+
+    private final float cpuBudget;
+    private final long latencyBudgetMs;
+
+    private String state = "SCANNING";
+    private float averageMs = 0f;
+    private boolean hasAverage = false;
+    private long lastStartMs = Long.MIN_VALUE / 2;
+    private int decimation = 1;
+    private long processedFrames = 0;
+    private long skippedFrames = 0;
+
+    /**
+     * @param cpuBudget       share of one core analysis may use, in (0, 1]
+     * @param latencyBudgetMs per-frame processing time above which scanning drops to half resolution
+     */
+    AnalysisGovernor(float cpuBudget, long latencyBudgetMs) {
+        this.cpuBudget = cpuBudget;
+        this.latencyBudgetMs = latencyBudgetMs;
+    }
+
+    /** Whether the frame arriving now should be analysed; counts it as skipped if not. */
+    boolean shouldAnalyze(long nowMs) {
+        long interval = minIntervalMs();
+        if (interval == STOPPED || nowMs - lastStartMs < interval) {
+            skippedFrames++;
+            return false;
+        }
+        lastStartMs = nowMs;
+        return true;
+    }
+
+    /** Resolution divisor for the next analysed frame: 1 for full, 2 for half. */
+    int decimation() {
+        return decimation;
+    }
+
+    void onFrameProcessed(String status, long processingMs) {
+        processedFrames++;
+        state = status;
+        averageMs = hasAverage ? averageMs + EWMA_WEIGHT * (processingMs - averageMs) : processingMs;
+        hasAverage = true;
+
+        if (!"SCANNING".equals(status)) {
+            // Anything in view is decoded at full resolution
+            decimation = 1;
+        } else if (decimation == 1 && averageMs > DECIMATE_ABOVE * latencyBudgetMs) {
+            decimation = 2;
+        } else if (decimation == 2 && averageMs < RESTORE_BELOW * latencyBudgetMs) {
+            decimation = 1;
+        }
+    }
+
+    long minIntervalMs() {
+        long stateInterval;
+        switch (state) {
+            case "ARRIVED":
+                return STOPPED;
+            case "DETECTED":
+                stateInterval = TRACKING_INTERVAL_MS;
+                break;
+            case "SCANNING":
+                stateInterval = SCANNING_INTERVAL_MS;
+                break;
+            default:
+                stateInterval = NAVIGATING_INTERVAL_MS;
+                break;
+        }
+        // Start-to-start spacing that keeps processing within the CPU share
+        long budgetInterval = (long) (averageMs / cpuBudget);
+        return Math.max(stateInterval, budgetInterval);
+    }
+
+    long getProcessedFrames() {
+        return processedFrames;
+    }
+
+    Metrics getMetrics() {
+        return new Metrics(state, averageMs, minIntervalMs(), decimation, processedFrames, skippedFrames);
+    }
+}
@@ -0,0 +1,206 @@
+// AnalysisPipeline.java
+
+package com.example.mp;
+
+import android.graphics.ImageFormat;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+import com.chaquo.python.PyObject;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Analyses frames for one trip on the shared {@link NavigationEngine} thread,
+ * which is the only owner of the Python NavigationProcessor. Each frame becomes
+ * an immutable {@link NavigationResult}; only results that differ from the
+ * previous one are posted to the main looper.
+ */
+public class AnalysisPipeline implements ImageAnalysis.Analyzer {
+
+    private static final String TAG = "AnalysisPipeline";
+
+    // Analysis may use half of one core; slower frames than this make scanning drop to half resolution
+    private static final float CPU_BUDGET = 0.5f;
+    private static final long LATENCY_BUDGET_MS = 80;
+    private static final int METRICS_EVERY_FRAMES = 30;
+
+    public interface Listener {
+        /** Called on the main thread. */
+        void onNavigationResult(@NonNull NavigationResult result);
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final String destinationId;
+    private final NavigationEngine engine;
+    private final Listener listener;
+    private volatile boolean closed = false;
+
+    // Everything below is only touched on the analysis thread.
+    private PyObject navigationProcessor;
+    @Nullable private NavMap navMap;
+    private final PackedResult packed = new PackedResult();
+    private final AnalysisGovernor governor = new AnalysisGovernor(CPU_BUDGET, LATENCY_BUDGET_MS);
+    private volatile AnalysisGovernor.Metrics metrics;
+    @Nullable private NavigationSession session;
+    private boolean hasArrived = false;
+    private NavigationResult lastPosted;
+    private byte[] yPlaneData, uPlaneData, vPlaneData;
+
+    public AnalysisPipeline(String destinationId, NavigationEngine engine, Listener listener) {
+        this.destinationId = destinationId;
+        this.engine = engine;
+        this.listener = listener;
+    }
+
+    public ExecutorService getExecutor() {
+        return engine.getExecutor();
+    }
+
+    /**
+     * Picks up the warmed-up processor and plans against the shared map. Queued
+     * behind the engine's warm-up, so it never sees a half-built processor.
+     */
+    public void start() {
+        engine.getExecutor().execute(() -> {
+            try {
+                navigationProcessor = engine.getProcessor();
+                if (navigationProcessor == null) {
+                    Log.e(TAG, "NavigationProcessor is not available.");
+                    return;
+                }
+                navigationProcessor.callAttr("reset");
+                navMap = engine.getNavMap();
+                RouteEngine routeEngine = engine.getRouteEngine();
+                int destination = navMap != null ? navMap.indexOf(destinationId) : -1;
+                if (destination >= 0 && routeEngine != null) {
+                    session = new NavigationSession(navMap, routeEngine, engine.getNextHopTable(), destination);
+                } else {
+                    Log.e(TAG, "Destination " + destinationId + " is not in the compiled map.");
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to start analysis", e);
+            }
+        });
+    }
+
+    /** Latest governor decisions, refreshed every METRICS_EVERY_FRAMES analysed frames; null before that. */
+    @Nullable
+    AnalysisGovernor.Metrics getMetrics() {
+        return metrics;
+    }
+
+    /** Stops analysing; the engine and its thread stay alive for the next trip. */
+    public void shutdown() {
+        closed = true;
+    }
+
+    @Override
+    public void analyze(@NonNull ImageProxy imageProxy) {
+        try {
+            if (closed || navigationProcessor == null || hasArrived) return;
+            if (!governor.shouldAnalyze(SystemClock.uptimeMillis())) return;
+            if (imageProxy.getFormat() != ImageFormat.YUV_420_888) {
+                Log.e(TAG, "Unsupported image format: Not YUV_420_888");
+                return;
+            }
+
+            int width = imageProxy.getWidth();
+            int height = imageProxy.getHeight();
+            ImageProxy.PlaneProxy[] planes = imageProxy.getPlanes();
+            if (planes[0].getPixelStride() != 1) {
+                Log.e(TAG, "Unsupported Y plane pixel stride: " + planes[0].getPixelStride());
+                return;
+            }
+            yPlaneData = copyPlane(planes[0], yPlaneData);
+            uPlaneData = copyPlane(planes[1], uPlaneData);
+            vPlaneData = copyPlane(planes[2], vPlaneData);
+
+            // Python fills packed.data in place; no dictionary crosses the boundary.
+            long startMs = SystemClock.uptimeMillis();
+            navigationProcessor.callAttr("process_camera_planes",
+                    yPlaneData, uPlaneData, vPlaneData, width, height,
+                    planes[0].getRowStride(), planes[1].getRowStride(), planes[1].getPixelStride(),
+                    packed.data, governor.decimation());
+
+            NavigationResult navResult = toResult(packed.status(), packed.copyCorners());
+            governor.onFrameProcessed(navResult.getStatus(), SystemClock.uptimeMillis() - startMs);
+            if (governor.getProcessedFrames() % METRICS_EVERY_FRAMES == 0) {
+                metrics = governor.getMetrics();
+                Log.d(TAG, "Governor: " + metrics);
+            }
+            if ("ARRIVED".equals(navResult.getStatus())) {
+                hasArrived = true;
+            }
+            post(navResult);
+        } catch (Exception e) {
+            Log.e(TAG, "CRITICAL ERROR in Python call or analyzer loop", e);
+        } finally {
+            imageProxy.close();
+        }
+    }
+
+    private NavigationResult toResult(String status, float[] corners) {
+        NavigationResult.Builder builder = new NavigationResult.Builder(status)
+                .corners(corners, packed.frameWidth(), packed.frameHeight());
+        int location = packed.locationIndex();
+        if ("LOCATION_CONFIRMED".equals(status) && location >= 0) {
+            // Routing runs in Java; Python only reports which location was scanned.
+            if (session == null) {
+                return builder.status(NavigationResult.STATUS_PATH_ERROR)
+                        .locationName(locationName(location))
+                        .message("Destination " + destinationId + " is not on the map.")
+                        .build();
+            }
+            if (session.isPathPlanned()) {
+                session.update(location, builder);
+            } else {
+                session.planRoute(location, builder);
+            }
+            return builder.build();
+        }
+
+        builder.locationName(locationName(location));
+        if ("ERROR".equals(status) || "OFF_TRACK_ERROR".equals(status)) {
+            builder.message(lastMessage());
+        }
+        return builder.build();
+    }
+
+    @Nullable
+    private String locationName(int index) {
+        if (navMap == null || index < 0 || index >= navMap.getNodeCount()) return null;
+        return navMap.getLocationName(index);
+    }
+
+    @Nullable
+    private String lastMessage() {
+        PyObject message = navigationProcessor.callAttr("get_last_message");
+        return message != null ? message.toString() : null;
+    }
+
+    private void post(NavigationResult result) {
+        if (result.equals(lastPosted)) return;
+        lastPosted = result;
+        mainHandler.post(() -> listener.onNavigationResult(result));
+    }
+
+    /**
+     * Copies each plane with one bulk get into an array reused across frames.
+     * Chaquopy hands Java arrays to Python by reference and numpy views them via
+     * the buffer protocol, so no further copy is made on the way into Python.
+     */
+    private static byte[] copyPlane(ImageProxy.PlaneProxy plane, byte[] reuse) {
+        ByteBuffer buffer = plane.getBuffer();
+        buffer.rewind();
+        int size = buffer.remaining();
+        byte[] target = (reuse != null && reuse.length == size) ? reuse : new byte[size];
+        buffer.get(target, 0, size);
+        return target;
+    }
+}
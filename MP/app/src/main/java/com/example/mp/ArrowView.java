@@ -0,0 +1,82 @@
+// ArrowView.java
+
+package com.example.mp;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import androidx.appcompat.widget.AppCompatImageView;
+
+/**
+ * Direction arrow that eases toward the latest target angle once per display
+ * frame. Sensor events only store the target, so the view does one rotation
+ * update per vsync however fast headings arrive, and nothing is allocated.
+ */
+public class ArrowView extends AppCompatImageView implements Choreographer.FrameCallback {
+
+    // Time for the arrow to close ~63% of the remaining turn; close to the old 210 ms animation
+    private static final float TIME_CONSTANT_MS = 120f;
+    private static final float SETTLE_DEGREES = 0.1f;
+
+    private float targetRotation = 0f;
+    private long lastFrameTimeNanos = 0L;
+    private boolean frameScheduled = false;
+
+    public ArrowView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    /** Angle to point at, in degrees clockwise from straight up. */
+    public void setTargetRotation(float degrees) {
+        targetRotation = normalize(degrees);
+        scheduleFrame();
+    }
+
+    private void scheduleFrame() {
+        if (!frameScheduled && isAttachedToWindow()) {
+            frameScheduled = true;
+            lastFrameTimeNanos = 0L;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        float current = getRotation();
+        // Shortest way round, in (-180, 180]
+        float delta = ((targetRotation - current + 540f) % 360f) - 180f;
+        if (Math.abs(delta) < SETTLE_DEGREES) {
+            setRotation(targetRotation);
+            return;
+        }
+
+        float elapsedMs = lastFrameTimeNanos == 0L ? 16f : (frameTimeNanos - lastFrameTimeNanos) / 1_000_000f;
+        lastFrameTimeNanos = frameTimeNanos;
+        float step = 1f - (float) Math.exp(-elapsedMs / TIME_CONSTANT_MS);
+        setRotation(normalize(current + delta * step));
+
+        frameScheduled = true;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        // A target set before attach had no frame to ease toward it
+        if (getRotation() != targetRotation) {
+            scheduleFrame();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        Choreographer.getInstance().removeFrameCallback(this);
+        frameScheduled = false;
+        super.onDetachedFromWindow();
+    }
+
+    private static float normalize(float degrees) {
+        return ((degrees % 360f) + 360f) % 360f;
+    }
+}
@@ -0,0 +1,268 @@
+// CameraController.java
+
+package com.example.mp;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.hardware.camera2.CaptureRequest;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Range;
+import android.util.Size;
+import androidx.annotation.Nullable;
+import androidx.annotation.OptIn;
+import androidx.camera.camera2.interop.Camera2Interop;
+import androidx.camera.camera2.interop.ExperimentalCamera2Interop;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.Preview;
+import androidx.camera.core.UseCase;
+import androidx.camera.core.resolutionselector.AspectRatioStrategy;
+import androidx.camera.core.resolutionselector.ResolutionSelector;
+import androidx.camera.core.resolutionselector.ResolutionStrategy;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.camera.view.PreviewView;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.LifecycleOwner;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * Moves the camera between explicit power states and rebinds CameraX only when
+ * the state needs a different configuration: a code in view or being searched
+ * for gets full rate, a user standing still with nothing in view gets a slow,
+ * small stream, and after arrival analysis is unbound altogether. States are
+ * driven by navigation results and by an accelerometer stillness detector.
+ * Main thread only.
+ */
+public class CameraController implements SensorEventListener {
+
+    private static final String TAG = "CameraController";
+
+    public enum State { SEARCHING, TRACKING, STATIONARY, ARRIVED, PAUSED }
+
+    /** What to bind for a state; a null analysis size means no analysis. */
+    private static final class Config {
+        @Nullable final Size analysisSize;
+        final Range<Integer> fpsRange;
+
+        Config(@Nullable Size analysisSize, Range<Integer> fpsRange) {
+            this.analysisSize = analysisSize;
+            this.fpsRange = fpsRange;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Config)) return false;
+            Config that = (Config) o;
+            return Objects.equals(analysisSize, that.analysisSize) && fpsRange.equals(that.fpsRange);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(analysisSize, fpsRange);
+        }
+    }
+
+    // The QR detector's working size (QRDetectionModule.base_frame_width/height). Analysis asks
+    // for it so frames need no resizing; the detector adopts whatever size is granted instead.
+    private static final Size DETECTOR_SIZE = new Size(640, 480);
+
+    // Searching and tracking share a configuration, so a code flickering in and out never rebinds
+    private static final Config ACTIVE = new Config(DETECTOR_SIZE, new Range<>(15, 30));
+    private static final Config STILL = new Config(
+            new Size(DETECTOR_SIZE.getWidth() / 2, DETECTOR_SIZE.getHeight() / 2), new Range<>(5, 10));
+    private static final Config DONE = new Config(null, new Range<>(5, 15));
+
+    // A code must be out of view this long before tracking ends
+    private static final long LOSS_GRACE_MS = 2000;
+    // ...and the user must be still this long before the stream slows down
+    private static final long STILL_AFTER_MS = 3000;
+    // Variance of acceleration magnitude, in (m/s^2)^2, below which the phone counts as still
+    private static final float STILL_VARIANCE = 0.05f;
+    private static final float MOTION_ALPHA = 0.1f;
+
+    private final Context context;
+    private final LifecycleOwner lifecycleOwner;
+    private final PreviewView previewView;
+    private final Executor analysisExecutor;
+    private final ImageAnalysis.Analyzer analyzer;
+    private final SensorManager sensorManager;
+    @Nullable private final Sensor accelerometer;
+
+    private ProcessCameraProvider cameraProvider;
+    private State state = State.SEARCHING;
+    @Nullable private Config boundConfig;
+    // Results are only posted when they change, so track whether a code is in view, not when it was seen
+    private boolean codeInView = false;
+    private long codeLostAtMs = 0;
+
+    private float meanMagnitude = SensorManager.GRAVITY_EARTH;
+    private float magnitudeVariance = 1f;
+    private long stillSinceMs = -1;
+
+    public CameraController(Context context, LifecycleOwner lifecycleOwner, PreviewView previewView,
+                            Executor analysisExecutor, ImageAnalysis.Analyzer analyzer) {
+        this.context = context;
+        this.lifecycleOwner = lifecycleOwner;
+        this.previewView = previewView;
+        this.analysisExecutor = analysisExecutor;
+        this.analyzer = analyzer;
+        this.sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        this.accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /** Gets the camera provider and binds the current state. */
+    public void start() {
+        ListenableFuture<ProcessCameraProvider> cameraProviderFuture = ProcessCameraProvider.getInstance(context);
+        cameraProviderFuture.addListener(() -> {
+            try {
+                cameraProvider = cameraProviderFuture.get();
+                bind(configFor(state));
+            } catch (Exception e) {
+                Log.e(TAG, "CameraX binding failed", e);
+            }
+        }, ContextCompat.getMainExecutor(context));
+    }
+
+    public void resume() {
+        if (accelerometer != null) {
+            sensorManager.registerListener(this, accelerometer, SensorManager.SENSOR_DELAY_NORMAL);
+        }
+        if (state == State.PAUSED) {
+            // The lifecycle restarts the camera; pick the state back up from searching
+            state = State.SEARCHING;
+            stillSinceMs = -1;
+            Config config = configFor(state);
+            if (!config.equals(boundConfig)) {
+                bind(config);
+            }
+        }
+    }
+
+    public void pause() {
+        sensorManager.unregisterListener(this);
+        if (state != State.ARRIVED) {
+            state = State.PAUSED;
+        }
+    }
+
+    /** Feeds the status of each posted navigation result. */
+    public void onNavigationStatus(String status) {
+        if (state == State.ARRIVED || state == State.PAUSED) return;
+
+        if ("ARRIVED".equals(status)) {
+            moveTo(State.ARRIVED);
+        } else if (!"SCANNING".equals(status)) {
+            codeInView = true;
+            moveTo(State.TRACKING);
+        } else if (codeInView) {
+            codeInView = false;
+            codeLostAtMs = SystemClock.uptimeMillis();
+            // Re-check once the grace period is over, even if no sensor event arrives
+            previewView.postDelayed(() -> updateIdleState(SystemClock.uptimeMillis()), LOSS_GRACE_MS);
+        }
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        float x = event.values[0], y = event.values[1], z = event.values[2];
+        float magnitude = (float) Math.sqrt(x * x + y * y + z * z);
+        float deviation = magnitude - meanMagnitude;
+        meanMagnitude += MOTION_ALPHA * deviation;
+        magnitudeVariance += MOTION_ALPHA * (deviation * deviation - magnitudeVariance);
+
+        long now = SystemClock.uptimeMillis();
+        if (magnitudeVariance < STILL_VARIANCE) {
+            if (stillSinceMs < 0) stillSinceMs = now;
+        } else {
+            stillSinceMs = -1;
+        }
+        updateIdleState(now);
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+
+    /** Decides between tracking, searching and stationary when no code is in view now. */
+    private void updateIdleState(long now) {
+        if (state == State.ARRIVED || state == State.PAUSED || codeInView) return;
+        if (state == State.TRACKING && now - codeLostAtMs < LOSS_GRACE_MS) return;
+        boolean still = stillSinceMs >= 0 && now - stillSinceMs >= STILL_AFTER_MS;
+        moveTo(still ? State.STATIONARY : State.SEARCHING);
+    }
+
+    private void moveTo(State next) {
+        if (next == state) return;
+        Log.d(TAG, "Camera state " + state + " -> " + next);
+        state = next;
+        Config config = configFor(next);
+        if (!config.equals(boundConfig)) {
+            bind(config);
+        }
+    }
+
+    private static Config configFor(State state) {
+        switch (state) {
+            case STATIONARY:
+                return STILL;
+            case ARRIVED:
+                return DONE;
+            default:
+                return ACTIVE;
+        }
+    }
+
+    @OptIn(markerClass = ExperimentalCamera2Interop.class)
+    private void bind(Config config) {
+        if (cameraProvider == null) return;
+        List<UseCase> useCases = new ArrayList<>(2);
+        ImageAnalysis imageAnalysis = null;
+
+        Preview.Builder previewBuilder = new Preview.Builder();
+        new Camera2Interop.Extender<>(previewBuilder)
+                .setCaptureRequestOption(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, config.fpsRange);
+        Preview preview = previewBuilder.build();
+        preview.setSurfaceProvider(previewView.getSurfaceProvider());
+        useCases.add(preview);
+
+        if (config.analysisSize != null) {
+            ImageAnalysis.Builder analysisBuilder = new ImageAnalysis.Builder()
+                    .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                    .setResolutionSelector(new ResolutionSelector.Builder()
+                            .setAspectRatioStrategy(AspectRatioStrategy.RATIO_4_3_FALLBACK_AUTO_STRATEGY)
+                            .setResolutionStrategy(new ResolutionStrategy(config.analysisSize,
+                                    ResolutionStrategy.FALLBACK_RULE_CLOSEST_HIGHER_THEN_LOWER))
+                            .build());
+            new Camera2Interop.Extender<>(analysisBuilder)
+                    .setCaptureRequestOption(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, config.fpsRange);
+            imageAnalysis = analysisBuilder.build();
+            imageAnalysis.setAnalyzer(analysisExecutor, analyzer);
+            useCases.add(imageAnalysis);
+        }
+
+        try {
+            cameraProvider.unbindAll();
+            cameraProvider.bindToLifecycle(lifecycleOwner, CameraSelector.DEFAULT_BACK_CAMERA,
+                    useCases.toArray(new UseCase[0]));
+            boundConfig = config;
+            if (imageAnalysis != null && imageAnalysis.getResolutionInfo() != null) {
+                Log.d(TAG, "Analysis requested " + config.analysisSize + ", granted "
+                        + imageAnalysis.getResolutionInfo().getResolution());
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "CameraX binding failed", e);
+        }
+    }
+}
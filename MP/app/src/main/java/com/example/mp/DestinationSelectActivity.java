@@ -10,17 +10,14 @@ import android.util.Pair;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.view.GestureDetectorCompat;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
-import com.chaquo.python.PyObject;
-import com.chaquo.python.Python;
-import com.chaquo.python.android.AndroidPlatform;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 public class DestinationSelectActivity extends AppCompatActivity {
 
@@ -29,7 +26,6 @@ public class DestinationSelectActivity extends AppCompatActivity {
     private DestinationAdapter adapter;
     private final List<Pair<String, String>> destinations = new ArrayList<>();
     private GestureDetectorCompat gestureDetector;
-    private Python python;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -53,53 +49,23 @@ public class DestinationSelectActivity extends AppCompatActivity {
             public void onRequestDisallowInterceptTouchEvent(boolean disallowIntercept) {}
         });
 
-        initPython();
-        loadDestinations();
+        NavigationEngine engine = NavigationEngine.getInstance();
+        engine.warmUp(this);
+        engine.whenMapLoaded(this::loadDestinations);
 
         TTSService.getInstance().speak("Select a destination by swiping up or down. Tap to confirm.", TextToSpeech.QUEUE_FLUSH);
     }
 
-    private void initPython() {
-        if (!Python.isStarted()) {
-            Python.start(new AndroidPlatform(this));
+    private void loadDestinations(@Nullable NavMap navMap) {
+        if (isFinishing() || isDestroyed()) {
+            return;
         }
-        python = Python.getInstance();
-    }
-
-    private void loadDestinations() {
-        Log.d(TAG, "Attempting to load destinations from Python...");
-        try {
-            PyObject navigationProcessor = python.getModule("navigation_logic").callAttr("NavigationProcessor");
-            PyObject locationsResult = navigationProcessor.callAttr("get_all_locations");
-
-            if (locationsResult == null) {
-                Log.e(TAG, "Python call to get_all_locations returned null!");
-                return;
-            }
-
-            Map<PyObject, PyObject> locationsMap = locationsResult.asMap();
-            PyObject locationsListPy = locationsMap.get(python.getBuiltins().get("str").call("locations"));
-
-            if (locationsListPy != null) {
-                List<PyObject> pyDestinations = locationsListPy.asList();
-                Log.i(TAG, "Successfully extracted " + pyDestinations.size() + " destinations from the list.");
-
-                for (PyObject dest : pyDestinations) {
-                    Map<PyObject, PyObject> destMap = dest.asMap();
-                    PyObject idObj = destMap.get(python.getBuiltins().get("str").call("location_id"));
-                    PyObject nameObj = destMap.get(python.getBuiltins().get("str").call("location_name"));
-
-                    if (idObj != null && nameObj != null) {
-                        destinations.add(new Pair<>(idObj.toString(), nameObj.toString()));
-                    } else {
-                        Log.w(TAG, "Skipping a destination due to missing 'location_id' or 'location_name'.");
-                    }
-                }
-            } else {
-                Log.e(TAG, "The 'locations' key was not found in the converted Python result map.");
+        if (navMap != null) {
+            for (int i = 0; i < navMap.getNodeCount(); i++) {
+                destinations.add(new Pair<>(navMap.getLocationId(i), navMap.getLocationName(i)));
             }
-        } catch (Exception e) {
-            Log.e(TAG, "An error occurred while loading destinations", e);
+            Log.i(TAG, "Loaded " + destinations.size() + " destinations from the compiled map.");
+        } else {
             TTSService.getInstance().speak("A critical error occurred while loading destinations.");
         }
 
@@ -151,12 +117,14 @@ public class DestinationSelectActivity extends AppCompatActivity {
 
         @Override
         public boolean onSingleTapUp(MotionEvent e) {
+            if (adapter == null) return false; // Map still loading
             confirmSelection(adapter.getSelectedPosition());
             return true;
         }
 
         @Override
         public boolean onFling(@NonNull MotionEvent e1, @NonNull MotionEvent e2, float velocityX, float velocityY) {
+            if (adapter == null) return false;
             float diffY = e2.getY() - e1.getY();
 
             if (Math.abs(diffY) > SWIPE_THRESHOLD && Math.abs(velocityY) > SWIPE_VELOCITY_THRESHOLD) {
@@ -0,0 +1,131 @@
+// EarconPlayer.java
+
+package com.example.mp;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.media.SoundPool;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Short directional cues played from memory. The bundled turn sounds are decoded
+ * into a SoundPool once, and "straight ahead" is a short synthesised blip held
+ * in a static AudioTrack, so a cue starts without any speech synthesis.
+ * Speech stays for sentences that are not repeated every second.
+ */
+public class EarconPlayer {
+
+    private static final String TAG = "EarconPlayer";
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final int BLIP_MS = 70;
+    private static final double BLIP_HZ = 880.0;
+
+    public enum Cue { LEFT, RIGHT, STRAIGHT }
+
+    private final SoundPool soundPool;
+    private final int leftSoundId;
+    private final int rightSoundId;
+    private volatile boolean leftLoaded = false;
+    private volatile boolean rightLoaded = false;
+    private AudioTrack straightTrack;
+
+    public EarconPlayer(Context context) {
+        AudioAttributes attributes = new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_ASSISTANCE_NAVIGATION_GUIDANCE)
+                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                .build();
+
+        soundPool = new SoundPool.Builder()
+                .setMaxStreams(2)
+                .setAudioAttributes(attributes)
+                .build();
+        soundPool.setOnLoadCompleteListener((pool, sampleId, status) -> {
+            if (status != 0) {
+                Log.e(TAG, "Failed to load earcon " + sampleId);
+                return;
+            }
+            if (sampleId == leftSoundId) leftLoaded = true;
+            if (sampleId == rightSoundId) rightLoaded = true;
+        });
+        leftSoundId = soundPool.load(context, R.raw.turn_left2, 1);
+        rightSoundId = soundPool.load(context, R.raw.turn_right2, 1);
+
+        straightTrack = createBlipTrack(attributes);
+    }
+
+    /** Plays a cue; returns false if it is not loaded yet so the caller can fall back to speech. */
+    public boolean play(Cue cue) {
+        switch (cue) {
+            case LEFT:
+                return leftLoaded && soundPool.play(leftSoundId, 1f, 1f, 1, 0, 1f) != 0;
+            case RIGHT:
+                return rightLoaded && soundPool.play(rightSoundId, 1f, 1f, 1, 0, 1f) != 0;
+            case STRAIGHT:
+                return playBlip();
+            default:
+                return false;
+        }
+    }
+
+    public void release() {
+        soundPool.release();
+        if (straightTrack != null) {
+            straightTrack.release();
+            straightTrack = null;
+        }
+    }
+
+    private boolean playBlip() {
+        if (straightTrack == null) return false;
+        try {
+            // A static track plays once; rewind it to play again
+            straightTrack.stop();
+            straightTrack.setPlaybackHeadPosition(0);
+            straightTrack.play();
+            return true;
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Failed to play straight-ahead cue", e);
+            return false;
+        }
+    }
+
+    private static AudioTrack createBlipTrack(AudioAttributes attributes) {
+        short[] samples = synthesizeBlip();
+        try {
+            AudioTrack.Builder builder = new AudioTrack.Builder()
+                    .setAudioAttributes(attributes)
+                    .setAudioFormat(new AudioFormat.Builder()
+                            .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                            .setSampleRate(SAMPLE_RATE)
+                            .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
+                            .build())
+                    .setTransferMode(AudioTrack.MODE_STATIC)
+                    .setBufferSizeInBytes(samples.length * 2);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                builder.setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY);
+            }
+            AudioTrack track = builder.build();
+            track.write(samples, 0, samples.length);
+            return track;
+        } catch (IllegalArgumentException | UnsupportedOperationException e) {
+            Log.e(TAG, "Could not create straight-ahead cue", e);
+            return null;
+        }
+    }
+
+    /** Sine burst with a raised-cosine envelope so it starts and ends without clicks. */
+    private static short[] synthesizeBlip() {
+        int count = SAMPLE_RATE * BLIP_MS / 1000;
+        short[] samples = new short[count];
+        for (int i = 0; i < count; i++) {
+            double envelope = 0.5 * (1 - Math.cos(2 * Math.PI * i / (count - 1)));
+            double value = Math.sin(2 * Math.PI * BLIP_HZ * i / SAMPLE_RATE) * envelope;
+            samples[i] = (short) (value * 0.6 * Short.MAX_VALUE);
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,161 @@
+// GuidanceToneSynth.java
+
+package com.example.mp;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Continuous guidance tone as an alternative to spoken turn commands. The tone
+ * is panned toward the target, rises in pitch as the user faces it, and pulses
+ * faster as the next waypoint gets closer. It is synthesised on its own audio
+ * thread into one preallocated buffer of CHUNK_FRAMES, so a heading change is
+ * heard within one chunk plus the track's own buffer. Stopping only signals
+ * that thread; it finishes its chunk and releases the track by itself.
+ */
+public class GuidanceToneSynth {
+
+    private static final String TAG = "GuidanceToneSynth";
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final int CHUNK_FRAMES = 256;
+
+    // Pitch when facing the target and when facing directly away from it
+    private static final double ON_TARGET_HZ = 880.0;
+    private static final double OFF_TARGET_HZ = 330.0;
+    // Pulse period at the waypoint, and how much it grows per metre away
+    private static final double MIN_PULSE_MS = 200.0;
+    private static final double PULSE_MS_PER_METRE = 60.0;
+    private static final double MAX_PULSE_MS = 1500.0;
+    private static final double RAMP_MS = 8.0;
+    private static final float VOLUME = 0.5f;
+
+    private volatile float angleToTarget = 0f;
+    private volatile float distanceMeters = 0f;
+    // The thread currently rendering; any other render thread stops at its next chunk
+    private volatile Thread audioThread;
+
+    /** Angle to the target in degrees clockwise from straight ahead, as from onHeadingChanged. */
+    public void setAngle(float degrees) {
+        angleToTarget = degrees;
+    }
+
+    public void setDistance(float meters) {
+        distanceMeters = meters;
+    }
+
+    public boolean isRunning() {
+        return audioThread != null;
+    }
+
+    public synchronized void start() {
+        if (audioThread != null) return;
+        audioThread = new Thread(this::renderLoop, "guidance-tone");
+        audioThread.start();
+    }
+
+    /** Returns at once; safe to call from the main thread. */
+    public synchronized void stop() {
+        audioThread = null;
+    }
+
+    private synchronized void onRenderFailed() {
+        if (audioThread == Thread.currentThread()) {
+            audioThread = null;
+        }
+    }
+
+    private void renderLoop() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        AudioTrack track = createTrack();
+        if (track == null) {
+            onRenderFailed();
+            return;
+        }
+
+        short[] buffer = new short[CHUNK_FRAMES * 2];
+        double phase = 0;
+        double pulsePosition = 0;
+        // Smoothed per sample, so parameter jumps between chunks do not click
+        float leftGain = 0f, rightGain = 0f;
+        double frequency = ON_TARGET_HZ;
+
+        track.play();
+        try {
+            while (audioThread == Thread.currentThread()) {
+                // Signed angle in (-180, 180]; positive means the target is to the right
+                float angle = ((angleToTarget % 360f) + 540f) % 360f - 180f;
+                double pan = Math.sin(Math.toRadians(angle));
+                double panAngle = (pan + 1) * Math.PI / 4; // Equal-power pan
+                float targetLeft = (float) Math.cos(panAngle) * VOLUME;
+                float targetRight = (float) Math.sin(panAngle) * VOLUME;
+                double facing = Math.abs(angle) / 180.0;
+                double targetFrequency = ON_TARGET_HZ + (OFF_TARGET_HZ - ON_TARGET_HZ) * facing;
+
+                double pulseMs = Math.min(MAX_PULSE_MS, MIN_PULSE_MS + PULSE_MS_PER_METRE * distanceMeters);
+                double pulseSamples = pulseMs * SAMPLE_RATE / 1000.0;
+                double rampSamples = RAMP_MS * SAMPLE_RATE / 1000.0;
+                double onSamples = pulseSamples / 2;
+
+                for (int i = 0; i < CHUNK_FRAMES; i++) {
+                    leftGain += (targetLeft - leftGain) * 0.002f;
+                    rightGain += (targetRight - rightGain) * 0.002f;
+                    frequency += (targetFrequency - frequency) * 0.002;
+
+                    pulsePosition += 1;
+                    if (pulsePosition >= pulseSamples) pulsePosition -= pulseSamples;
+                    double envelope;
+                    if (pulsePosition >= onSamples) {
+                        envelope = 0;
+                    } else if (pulsePosition < rampSamples) {
+                        envelope = pulsePosition / rampSamples;
+                    } else if (pulsePosition > onSamples - rampSamples) {
+                        envelope = (onSamples - pulsePosition) / rampSamples;
+                    } else {
+                        envelope = 1;
+                    }
+
+                    phase += 2 * Math.PI * frequency / SAMPLE_RATE;
+                    if (phase > 2 * Math.PI) phase -= 2 * Math.PI;
+                    double sample = Math.sin(phase) * envelope * Short.MAX_VALUE;
+                    buffer[2 * i] = (short) (sample * leftGain);
+                    buffer[2 * i + 1] = (short) (sample * rightGain);
+                }
+                track.write(buffer, 0, buffer.length);
+            }
+        } finally {
+            track.stop();
+            track.release();
+        }
+    }
+
+    private static AudioTrack createTrack() {
+        int minBuffer = AudioTrack.getMinBufferSize(SAMPLE_RATE,
+                AudioFormat.CHANNEL_OUT_STEREO, AudioFormat.ENCODING_PCM_16BIT);
+        try {
+            AudioTrack.Builder builder = new AudioTrack.Builder()
+                    .setAudioAttributes(new AudioAttributes.Builder()
+                            .setUsage(AudioAttributes.USAGE_ASSISTANCE_NAVIGATION_GUIDANCE)
+                            .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                            .build())
+                    .setAudioFormat(new AudioFormat.Builder()
+                            .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                            .setSampleRate(SAMPLE_RATE)
+                            .setChannelMask(AudioFormat.CHANNEL_OUT_STEREO)
+                            .build())
+                    .setTransferMode(AudioTrack.MODE_STREAM)
+                    .setBufferSizeInBytes(Math.max(minBuffer, CHUNK_FRAMES * 4));
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                builder.setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY);
+            }
+            return builder.build();
+        } catch (IllegalArgumentException | UnsupportedOperationException e) {
+            Log.e(TAG, "Could not create guidance tone track", e);
+            return null;
+        }
+    }
+}
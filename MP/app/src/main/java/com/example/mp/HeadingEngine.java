@@ -0,0 +1,122 @@
+// HeadingEngine.java
+
+package com.example.mp;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.util.Log;
+
+/**
+ * Publishes one smoothed compass heading, in degrees clockwise from magnetic
+ * north. Uses the fused TYPE_ROTATION_VECTOR sensor when the device has one and
+ * falls back to low-pass filtered accelerometer and magnetometer readings
+ * otherwise. All buffers are allocated once, so no sensor event creates garbage.
+ */
+public class HeadingEngine implements SensorEventListener {
+
+    private static final String TAG = "HeadingEngine";
+
+    // Low-pass factor for the raw accelerometer/magnetometer fallback
+    private static final float FUSION_ALPHA = 0.97f;
+    // Fraction of the remaining turn applied per rotation vector update; the
+    // fallback inputs are already low-passed, so it publishes them as they are
+    private static final float HEADING_SMOOTHING = 0.25f;
+
+    public interface Listener {
+        /** Called on the thread that delivers sensor events (the main thread). */
+        void onHeadingChanged(float headingDegrees);
+    }
+
+    private final SensorManager sensorManager;
+    private final Listener listener;
+    private final Sensor rotationVector;
+    private final Sensor accelerometer;
+    private final Sensor magnetometer;
+
+    private final float[] rotationMatrix = new float[9];
+    private final float[] orientation = new float[3];
+    private final float[] gravity = new float[3];
+    private final float[] geomagnetic = new float[3];
+    private boolean hasGravity = false;
+
+    private float heading = 0f;
+    private boolean hasHeading = false;
+
+    public HeadingEngine(SensorManager sensorManager, Listener listener) {
+        this.sensorManager = sensorManager;
+        this.listener = listener;
+        rotationVector = sensorManager.getDefaultSensor(Sensor.TYPE_ROTATION_VECTOR);
+        accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+        magnetometer = sensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
+        if (rotationVector == null) {
+            Log.i(TAG, "No rotation vector sensor, using accelerometer and magnetometer.");
+        }
+    }
+
+    public void start() {
+        if (rotationVector != null) {
+            sensorManager.registerListener(this, rotationVector, SensorManager.SENSOR_DELAY_GAME);
+            return;
+        }
+        if (accelerometer != null) sensorManager.registerListener(this, accelerometer, SensorManager.SENSOR_DELAY_GAME);
+        if (magnetometer != null) sensorManager.registerListener(this, magnetometer, SensorManager.SENSOR_DELAY_GAME);
+    }
+
+    public void stop() {
+        sensorManager.unregisterListener(this);
+    }
+
+    /** Latest smoothed heading in degrees [0, 360). */
+    public float getHeading() {
+        return heading;
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        switch (event.sensor.getType()) {
+            case Sensor.TYPE_ROTATION_VECTOR:
+                SensorManager.getRotationMatrixFromVector(rotationMatrix, event.values);
+                break;
+            case Sensor.TYPE_ACCELEROMETER:
+                lowPass(event.values, gravity);
+                hasGravity = true;
+                // The heading is recomputed on magnetometer events only
+                return;
+            case Sensor.TYPE_MAGNETIC_FIELD:
+                lowPass(event.values, geomagnetic);
+                if (!hasGravity || !SensorManager.getRotationMatrix(rotationMatrix, null, gravity, geomagnetic)) {
+                    return;
+                }
+                break;
+            default:
+                return;
+        }
+        SensorManager.getOrientation(rotationMatrix, orientation);
+        float smoothing = event.sensor.getType() == Sensor.TYPE_ROTATION_VECTOR ? HEADING_SMOOTHING : 1f;
+        publish((float) Math.toDegrees(orientation[0]), smoothing);
+    }
+
+    private static void lowPass(float[] input, float[] output) {
+        output[0] = FUSION_ALPHA * output[0] + (1 - FUSION_ALPHA) * input[0];
+        output[1] = FUSION_ALPHA * output[1] + (1 - FUSION_ALPHA) * input[1];
+        output[2] = FUSION_ALPHA * output[2] + (1 - FUSION_ALPHA) * input[2];
+    }
+
+    private void publish(float rawHeading, float smoothing) {
+        float target = (rawHeading + 360) % 360;
+        if (!hasHeading) {
+            heading = target;
+            hasHeading = true;
+        } else {
+            // Smooth along the shorter way round, so 359 -> 1 does not sweep back through 180
+            float delta = ((target - heading + 540) % 360) - 180;
+            heading = (heading + smoothing * delta + 360) % 360;
+        }
+        listener.onHeadingChanged(heading);
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+}
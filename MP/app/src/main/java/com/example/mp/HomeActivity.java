@@ -16,6 +16,10 @@ public class HomeActivity extends AppCompatActivity {
         // Initialize our central TTS service
         TTSService.getInstance().initialize(getApplicationContext());
 
+        // Start Python and the map in the background while the user is still here
+        NavigationEngine.getInstance().warmUp(this);
+        NavigationEngine.getInstance().whenMapLoaded(TTSService.getInstance()::precacheLocations);
+
         RelativeLayout homeLayout = findViewById(R.id.homeLayout);
 
         // Speak the welcome message after a short delay to ensure TTS is ready
@@ -28,4 +32,13 @@ public class HomeActivity extends AppCompatActivity {
             startActivity(intent);
         });
     }
+
+    @Override
+    protected void onDestroy() {
+        // The home screen is the root of the task, so finishing it ends the app
+        if (isFinishing()) {
+            TTSService.getInstance().shutdown();
+        }
+        super.onDestroy();
+    }
 }
\ No newline at end of file
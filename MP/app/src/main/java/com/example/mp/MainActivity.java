@@ -5,61 +5,46 @@ package com.example.mp;
 import android.Manifest;
 import android.content.Context;
 import android.content.pm.PackageManager;
-import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.os.Bundle;
 import android.os.Vibrator;
 import android.util.Log;
 import android.view.View;
-import android.view.animation.RotateAnimation;
-import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.camera.core.CameraSelector;
-import androidx.camera.core.ImageAnalysis;
-import androidx.camera.core.ImageProxy;
-import androidx.camera.core.Preview;
-import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
-import com.chaquo.python.PyObject;
-import com.chaquo.python.Python;
-import com.chaquo.python.android.AndroidPlatform;
-import com.google.common.util.concurrent.ListenableFuture;
-import java.nio.ByteBuffer;
 import java.util.Locale;
-import java.util.Map;
 
-public class MainActivity extends AppCompatActivity implements SensorEventListener {
+public class MainActivity extends AppCompatActivity {
 
     private static final String TAG = "MainActivity";
     private static final int CAMERA_PERMISSION_REQUEST_CODE = 101;
     private static final float TOLERANCE_DEGREES = 15f;
     private static final long FEEDBACK_INTERVAL_MS = 1000;
 
-    private ImageView arrowImage;
+    private ArrowView arrowImage;
     private TextView distanceText;
     private PreviewView cameraPreview;
     private TextView statusText;
     private OverlayView overlayView;
 
-    private SensorManager sensorManager;
+    private HeadingEngine headingEngine;
+    private EarconPlayer earconPlayer;
+    private final GuidanceToneSynth guidanceTone = new GuidanceToneSynth();
+    private boolean toneEnabled = false;
+    private boolean isResumed = false;
     private Vibrator vibrator;
 
-    private Python python;
-    private PyObject navigationProcessor;
+    private AnalysisPipeline analysisPipeline;
+    private CameraController cameraController;
 
     private String destinationId;
     private boolean isPathPlanned = false;
     private long lastFeedbackTime = 0L;
-    private float currentArrowRotation = 0f;
-    private final float[] gravity = new float[3];
-    private final float[] geomagnetic = new float[3];
     private float targetAzimuth = 0.0f;
     private float targetDistance = 0.0f;
     private boolean hasArrived = false;
@@ -75,11 +60,6 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         statusText = findViewById(R.id.statusText);
         overlayView = findViewById(R.id.overlayView);
 
-        initPython();
-        if (python != null) {
-            navigationProcessor = python.getModule("navigation_logic").callAttr("NavigationProcessor");
-        }
-
         destinationId = getIntent().getStringExtra("DESTINATION_ID");
         if (destinationId == null) {
             Log.e(TAG, "No destination ID was provided.");
@@ -88,8 +68,25 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
             return;
         }
 
-        sensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
+        // Normally already warm from HomeActivity; this only matters after process death.
+        NavigationEngine engine = NavigationEngine.getInstance();
+        engine.warmUp(this);
+        analysisPipeline = new AnalysisPipeline(destinationId, engine, this::onNavigationResult);
+        analysisPipeline.start();
+        cameraController = new CameraController(this, this, cameraPreview,
+                analysisPipeline.getExecutor(), analysisPipeline);
+
+        headingEngine = new HeadingEngine((SensorManager) getSystemService(Context.SENSOR_SERVICE), this::onHeadingChanged);
         vibrator = (Vibrator) getSystemService(VIBRATOR_SERVICE);
+        earconPlayer = new EarconPlayer(this);
+
+        // Long-press the arrow to switch between spoken cues and the continuous tone
+        findViewById(R.id.arrowBackground).setOnLongClickListener(v -> {
+            toneEnabled = !toneEnabled;
+            TTSService.getInstance().speak(toneEnabled ? "Guidance tone on." : "Guidance tone off.");
+            updateGuidanceTone();
+            return true;
+        });
 
         String initialMessage = "Please scan the nearest QR code to begin navigation.";
         statusText.setText(initialMessage);
@@ -102,147 +99,70 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         }
     }
 
-    private void initPython() {
-        if (!Python.isStarted()) {
-            Python.start(new AndroidPlatform(this));
-        }
-        python = Python.getInstance();
-    }
-
     private void startCamera() {
-        ListenableFuture<ProcessCameraProvider> cameraProviderFuture = ProcessCameraProvider.getInstance(this);
-        cameraProviderFuture.addListener(() -> {
-            try {
-                ProcessCameraProvider cameraProvider = cameraProviderFuture.get();
-                Preview preview = new Preview.Builder().build();
-                preview.setSurfaceProvider(cameraPreview.getSurfaceProvider());
-                CameraSelector cameraSelector = CameraSelector.DEFAULT_BACK_CAMERA;
-                ImageAnalysis imageAnalysis = new ImageAnalysis.Builder()
-                        .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
-                        .build();
-
-                imageAnalysis.setAnalyzer(ContextCompat.getMainExecutor(this), this::processImageProxy);
-
-                cameraProvider.unbindAll();
-                cameraProvider.bindToLifecycle(this, cameraSelector, preview, imageAnalysis);
-            } catch (Exception e) {
-                Log.e(TAG, "CameraX binding failed", e);
-            }
-        }, ContextCompat.getMainExecutor(this));
+        cameraController.start();
     }
 
-    private void processImageProxy(ImageProxy imageProxy) {
-        try {
-            if (navigationProcessor == null || python == null) return;
-            if (hasArrived) {
-                imageProxy.close();
-                return;
-            }
-            byte[] imageData = imageProxyToByteArray(imageProxy);
-            if (imageData == null) return;
-
-            PyObject result = navigationProcessor.callAttr("process_camera_frame",
-                    imageData, imageProxy.getWidth(), imageProxy.getHeight());
-
-            if (result == null) {
-                Log.e(TAG, "Python returned a null result, possibly due to a crash.");
-                updateStatus("Python Error. Check Logs.", false);
-                return;
-            }
-
-            Map<PyObject, PyObject> resultMap = result.asMap();
-            PyObject statusKey = python.getBuiltins().get("str").call("status");
-            PyObject statusObj = resultMap.get(statusKey);
+    private void onNavigationResult(NavigationResult result) {
+        if (hasArrived) return;
+        cameraController.onNavigationStatus(result.getStatus());
 
-            if (statusObj == null) {
-                Log.e(TAG, "Python result dictionary is missing the 'status' key. Full dict: " + resultMap.toString());
-                return;
-            }
-            String status = statusObj.toString();
-
-            PyObject corners = resultMap.get(python.getBuiltins().get("str").call("corners"));
-            if (corners != null) {
-                overlayView.setCorners(corners, imageProxy.getWidth(), imageProxy.getHeight());
-            } else {
-                overlayView.clear();
-            }
-
-            switch (status) {
-                case "SCANNING":
-                    break;
-                case "DETECTED":
-                    updateStatus("QR Code detected, hold steady.", false);
-                    break;
-                case "LOCATION_CONFIRMED":
-                    handleLocationConfirmed(resultMap);
-                    break;
-                case "NAVIGATING":
-                    handleNavigating(resultMap);
-                    break;
-                case "ARRIVED":
-                    updateStatus("You have arrived at your destination!", true);
-                    this.hasArrived = true; // Set the flag to stop guidance
-                    // Hide UI elements that are no longer needed
-                    arrowImage.setVisibility(View.GONE);
-                    distanceText.setVisibility(View.GONE);
-                    break;
-                case "OFF_TRACK_RECALCULATED":
-                    updateStatus("Off track. New path calculated.", true);
-                    break;
-                case "OFF_TRACK_ERROR":
-                case "ERROR":
-                    PyObject errorObj = resultMap.get(python.getBuiltins().get("str").call("message"));
-                    String errorMessage = (errorObj != null) ? errorObj.toString() : "An unknown error occurred.";
-                    updateStatus("Error: " + errorMessage, true);
-                    break;
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "CRITICAL ERROR in Python call or analyzer loop", e);
-        } finally {
-            imageProxy.close();
+        float[] corners = result.getCorners();
+        if (corners != null) {
+            overlayView.setCorners(corners, result.getImageWidth(), result.getImageHeight());
+        } else {
+            overlayView.clear();
         }
-    }
-
-    private void handleLocationConfirmed(Map<PyObject, PyObject> resultMap) {
-        PyObject locNameObj = resultMap.get(python.getBuiltins().get("str").call("location_name"));
-        String locName = (locNameObj != null) ? locNameObj.toString() : "an unknown location";
 
-        if (!isPathPlanned) {
+        if (result.isRoutePlanned()) {
+            String locName = result.getLocationName() != null ? result.getLocationName() : "an unknown location";
+            isPathPlanned = true;
+            updateGuidanceTone();
             updateStatus("Current location confirmed as " + locName + ". Planning route...", true);
-            PyObject pathResult = navigationProcessor.callAttr("set_destination", destinationId);
-            if (pathResult == null) {
-                updateStatus("Error: Failed to plan path.", true);
-                return;
-            }
-
-            Map<PyObject, PyObject> pathResultMap = pathResult.asMap();
-            PyObject pathStatusObj = pathResultMap.get(python.getBuiltins().get("str").call("status"));
+            handleNavigating(result);
+            return;
+        }
 
-            if (pathStatusObj != null && "PATH_READY".equals(pathStatusObj.toString())) {
-                isPathPlanned = true;
-                PyObject firstInstruction = navigationProcessor.callAttr("_update_navigation_status", resultMap.get(python.getBuiltins().get("str").call("corners")));
-                if (firstInstruction != null) {
-                    handleNavigating(firstInstruction.asMap());
-                }
-            } else {
-                PyObject errorObj = pathResultMap.get(python.getBuiltins().get("str").call("message"));
-                String error = (errorObj != null) ? errorObj.toString() : "Path planner failed.";
-                updateStatus("Error planning path: " + error, true);
-            }
-        } else {
-            updateStatus("Location: " + locName, false);
+        switch (result.getStatus()) {
+            case "SCANNING":
+                break;
+            case "DETECTED":
+                updateStatus("QR Code detected, hold steady.", false);
+                break;
+            case "LOCATION_CONFIRMED":
+                String locName = result.getLocationName() != null ? result.getLocationName() : "an unknown location";
+                updateStatus("Location: " + locName, false);
+                break;
+            case "NAVIGATING":
+                handleNavigating(result);
+                break;
+            case "ARRIVED":
+                updateStatus("You have arrived at your destination!", TTSService.Priority.ARRIVAL);
+                this.hasArrived = true; // Set the flag to stop guidance
+                updateGuidanceTone();
+                // Hide UI elements that are no longer needed
+                arrowImage.setVisibility(View.GONE);
+                distanceText.setVisibility(View.GONE);
+                break;
+            case "OFF_TRACK_RECALCULATED":
+                updateStatus("Off track. New path calculated.", TTSService.Priority.SAFETY);
+                break;
+            case NavigationResult.STATUS_PATH_ERROR:
+                updateStatus("Error planning path: " + result.getMessage(), true);
+                break;
+            case "OFF_TRACK_ERROR":
+            case "ERROR":
+                String errorMessage = (result.getMessage() != null) ? result.getMessage() : "An unknown error occurred.";
+                updateStatus("Error: " + errorMessage, TTSService.Priority.SAFETY);
+                break;
         }
     }
 
-    private void handleNavigating(Map<PyObject, PyObject> resultMap) {
-        PyObject nextWpObj = resultMap.get(python.getBuiltins().get("str").call("next_waypoint_name"));
-        PyObject azimuthObj = resultMap.get(python.getBuiltins().get("str").call("target_azimuth"));
-        PyObject distanceObj = resultMap.get(python.getBuiltins().get("str").call("target_distance"));
-
-        if (nextWpObj != null && azimuthObj != null && distanceObj != null) {
-            String statusMessage = "Proceed to " + nextWpObj.toString();
+    private void handleNavigating(NavigationResult result) {
+        if (result.hasTarget()) {
+            String statusMessage = "Proceed to " + result.getNextWaypointName();
             updateStatus(statusMessage, false);
-            updateNavigationTarget(azimuthObj.toFloat(), distanceObj.toFloat());
+            updateNavigationTarget(result.getTargetAzimuth(), result.getTargetDistance());
         } else {
             updateStatus("Scan QR code to get next step.", true);
         }
@@ -255,114 +175,70 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         }
     }
 
-    private byte[] imageProxyToByteArray(ImageProxy image) {
-        if (image.getFormat() != android.graphics.ImageFormat.YUV_420_888) {
-            Log.e(TAG, "Unsupported image format: Not YUV_420_888");
-            return null;
-        }
-        int width = image.getWidth();
-        int height = image.getHeight();
-        ImageProxy.PlaneProxy yPlane = image.getPlanes()[0];
-        ImageProxy.PlaneProxy uPlane = image.getPlanes()[1];
-        ImageProxy.PlaneProxy vPlane = image.getPlanes()[2];
-        ByteBuffer yBuffer = yPlane.getBuffer();
-        ByteBuffer uBuffer = uPlane.getBuffer();
-        ByteBuffer vBuffer = vPlane.getBuffer();
-        yBuffer.rewind();
-        uBuffer.rewind();
-        vBuffer.rewind();
-        byte[] nv21 = new byte[width * height * 3 / 2];
-        int yRowStride = yPlane.getRowStride();
-        int yPixelStride = yPlane.getPixelStride();
-        int yPos = 0;
-        if (yPixelStride == 1 && yRowStride == width) {
-            yBuffer.get(nv21, 0, width * height);
-        } else {
-            for (int row = 0; row < height; row++) {
-                yBuffer.position(row * yRowStride);
-                yBuffer.get(nv21, yPos, width);
-                yPos += width;
-            }
-        }
-        int uvRowStride = vPlane.getRowStride();
-        int uvPixelStride = vPlane.getPixelStride();
-        int vuPos = width * height;
-        for (int row = 0; row < height / 2; row++) {
-            for (int col = 0; col < width / 2; col++) {
-                int vPos = row * uvRowStride + col * uvPixelStride;
-                if (vPos < vBuffer.capacity()) {
-                    nv21[vuPos++] = vBuffer.get(vPos);
-                }
-                if (vPos < uBuffer.capacity()) {
-                    nv21[vuPos++] = uBuffer.get(vPos);
-                }
-            }
-        }
-        return nv21;
+    private void updateStatus(String text, TTSService.Priority priority) {
+        statusText.setText(text);
+        TTSService.getInstance().speak(text, priority);
     }
 
     public void updateNavigationTarget(float newAzimuth, float newDistance) {
         this.targetAzimuth = newAzimuth;
         this.targetDistance = newDistance;
+        guidanceTone.setDistance(newDistance);
         updateDistanceUI(newDistance);
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        Sensor accel = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-        if (accel != null) sensorManager.registerListener(this, accel, SensorManager.SENSOR_DELAY_GAME);
-        Sensor mag = sensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
-        if (mag != null) sensorManager.registerListener(this, mag, SensorManager.SENSOR_DELAY_GAME);
+        headingEngine.start();
+        cameraController.resume();
+        isResumed = true;
+        updateGuidanceTone();
     }
 
     @Override
     protected void onPause() {
         super.onPause();
-        sensorManager.unregisterListener(this);
+        headingEngine.stop();
+        cameraController.pause();
+        isResumed = false;
+        updateGuidanceTone();
     }
 
     @Override
     protected void onDestroy() {
-        TTSService.getInstance().shutdown();
+        if (analysisPipeline != null) {
+            analysisPipeline.shutdown();
+        }
+        if (earconPlayer != null) {
+            earconPlayer.release();
+        }
         super.onDestroy();
     }
 
-    @Override
-    public void onSensorChanged(SensorEvent event) {
-        final float alpha = 0.97f;
-        if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-            gravity[0] = alpha * gravity[0] + (1 - alpha) * event.values[0];
-            gravity[1] = alpha * gravity[1] + (1 - alpha) * event.values[1];
-            gravity[2] = alpha * gravity[2] + (1 - alpha) * event.values[2];
-        } else if (event.sensor.getType() == Sensor.TYPE_MAGNETIC_FIELD) {
-            geomagnetic[0] = alpha * geomagnetic[0] + (1 - alpha) * event.values[0];
-            geomagnetic[1] = alpha * geomagnetic[1] + (1 - alpha) * event.values[1];
-            geomagnetic[2] = alpha * geomagnetic[2] + (1 - alpha) * event.values[2];
-        }
-        float[] R = new float[9], I = new float[9];
-        if (SensorManager.getRotationMatrix(R, I, gravity, geomagnetic)) {
-            float[] orientation = new float[3];
-            SensorManager.getOrientation(R, orientation);
-            float deviceAzimuth = (float) Math.toDegrees(orientation[0]);
-            deviceAzimuth = (deviceAzimuth + 360) % 360;
-
-            if (isPathPlanned && !hasArrived) {
-                float angleToTarget = (targetAzimuth - deviceAzimuth + 360) % 360;
-                rotateArrow(angleToTarget);
+    private void onHeadingChanged(float deviceAzimuth) {
+        if (isPathPlanned && !hasArrived) {
+            float angleToTarget = (targetAzimuth - deviceAzimuth + 360) % 360;
+            rotateArrow(angleToTarget);
+            guidanceTone.setAngle(angleToTarget);
+            if (!guidanceTone.isRunning()) {
                 provideDirectionalFeedback(angleToTarget);
             }
         }
     }
 
     private void rotateArrow(float angleToTarget) {
-        RotateAnimation anim = new RotateAnimation(currentArrowRotation, angleToTarget,
-                RotateAnimation.RELATIVE_TO_SELF, 0.5f,
-                RotateAnimation.RELATIVE_TO_SELF, 0.5f);
-        anim.setDuration(210);
-        anim.setFillAfter(true);
-        arrowImage.startAnimation(anim);
-        currentArrowRotation = angleToTarget;
+        // The view eases toward this on the next display frames
+        arrowImage.setTargetRotation(angleToTarget);
+    }
+
+    /** The tone plays only while enabled, on screen, and a route is being followed. */
+    private void updateGuidanceTone() {
+        if (toneEnabled && isResumed && isPathPlanned && !hasArrived) {
+            guidanceTone.start();
+        } else {
+            guidanceTone.stop();
+        }
     }
 
     private void updateDistanceUI(float distanceMeters) {
@@ -376,17 +252,24 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         lastFeedbackTime = now;
         if (angleToTarget <= TOLERANCE_DEGREES || angleToTarget >= 360 - TOLERANCE_DEGREES) {
             if (vibrator != null) vibrator.vibrate(150);
-            TTSService.getInstance().speak("Straight ahead.");
+            playCue(EarconPlayer.Cue.STRAIGHT, "Straight ahead.");
         } else {
             if (vibrator != null) vibrator.vibrate(new long[]{0, 200, 100, 200}, -1);
             if (angleToTarget > TOLERANCE_DEGREES && angleToTarget <= 180) {
-                TTSService.getInstance().speak("Turn right");
+                playCue(EarconPlayer.Cue.RIGHT, "Turn right");
             } else {
-                TTSService.getInstance().speak("Turn left");
+                playCue(EarconPlayer.Cue.LEFT, "Turn left");
             }
         }
     }
 
+    /** Earcons for the repeating turn cues; speech only if the sounds are not loaded yet. */
+    private void playCue(EarconPlayer.Cue cue, String fallbackText) {
+        if (!earconPlayer.play(cue)) {
+            TTSService.getInstance().speak(fallbackText, TTSService.Priority.HEADING);
+        }
+    }
+
     private boolean isCameraPermissionGranted() {
         return ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED;
     }
@@ -407,6 +290,4 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         }
     }
 
-    @Override
-    public void onAccuracyChanged(Sensor sensor, int accuracy) {}
 }
\ No newline at end of file
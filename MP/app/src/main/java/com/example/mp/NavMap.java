@@ -0,0 +1,232 @@
+// NavMap.java
+
+package com.example.mp;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Read-only, memory-mapped view of the compiled map asset written by navmap.py.
+ * Nothing is parsed up front: every accessor reads straight from the mapping,
+ * so opening the map costs the same for 25 or 5000 locations. Location IDs are
+ * interned as indices; records are sorted by ID, so index order is ID order.
+ */
+public final class NavMap {
+
+    private static final String TAG = "NavMap";
+    private static final String ASSET_NAME = "navmap/block_n.navmap";
+
+    private static final int MAGIC = 0x50414D4E; // "NMAP" little-endian
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 48;
+    private static final int NODE_SIZE = 40;
+
+    public static final int FLAG_ACCESSIBLE = 0x01;
+    public static final int FLAG_WHEELCHAIR = 0x02;
+    public static final int FLAG_RESTROOM = 0x04;
+    public static final int FLAG_STAIR = 0x08;
+
+    private final File file;
+    private final ByteBuffer buffer;
+    private final int checksum;
+    private final int nodeCount;
+    private final int edgeCount;
+    private final int offNodes;
+    private final int offRowPtr;
+    private final int offColIdx;
+    private final int offWeights;
+    private final int offStrings;
+
+    private NavMap(File file, ByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(0) != MAGIC || (buffer.getShort(4) & 0xFFFF) != FORMAT_VERSION) {
+            throw new IOException("Unsupported map asset: " + file);
+        }
+        checksum = buffer.getInt(8);
+        nodeCount = buffer.getInt(12);
+        edgeCount = buffer.getInt(16);
+        offNodes = buffer.getInt(20);
+        offRowPtr = buffer.getInt(24);
+        offColIdx = buffer.getInt(28);
+        offWeights = buffer.getInt(32);
+        offStrings = buffer.getInt(36);
+    }
+
+    /**
+     * Maps the bundled map, first copying it out of the APK if the extracted
+     * copy is missing or from a different map version.
+     */
+    @NonNull
+    public static NavMap load(Context context) throws IOException {
+        File target = new File(context.getNoBackupFilesDir(), ASSET_NAME);
+        byte[] assetHeader = new byte[HEADER_SIZE];
+        try (InputStream in = context.getAssets().open(ASSET_NAME)) {
+            readFully(in, assetHeader);
+        }
+        if (!target.exists() || !Arrays.equals(assetHeader, readHeader(target))) {
+            extract(context, target);
+        }
+        return open(target);
+    }
+
+    /** Maps an already extracted map file. */
+    @NonNull
+    static NavMap open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new NavMap(file, mapped);
+        }
+    }
+
+    private static void extract(Context context, File target) throws IOException {
+        File parent = target.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        File tmp = new File(target.getPath() + ".tmp");
+        try (InputStream in = context.getAssets().open(ASSET_NAME);
+             OutputStream out = new FileOutputStream(tmp)) {
+            byte[] chunk = new byte[8192];
+            int n;
+            while ((n = in.read(chunk)) > 0) {
+                out.write(chunk, 0, n);
+            }
+        }
+        if (!tmp.renameTo(target)) {
+            throw new IOException("Cannot move map asset into " + target);
+        }
+        Log.i(TAG, "Extracted map asset to " + target);
+    }
+
+    private static byte[] readHeader(File file) {
+        byte[] header = new byte[HEADER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            readFully(in, header);
+            return header;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void readFully(InputStream in, byte[] dst) throws IOException {
+        int read = 0;
+        while (read < dst.length) {
+            int n = in.read(dst, read, dst.length - read);
+            if (n < 0) throw new IOException("Truncated map asset");
+            read += n;
+        }
+    }
+
+    /** Path of the mapped file, so Python can map the same bytes. */
+    public String getPath() {
+        return file.getAbsolutePath();
+    }
+
+    /** CRC32 of the map body; changes whenever the map content changes. */
+    public int getChecksum() {
+        return checksum;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public String getLocationId(int index) {
+        int record = offNodes + index * NODE_SIZE;
+        return readString(buffer.getInt(record), buffer.getShort(record + 12) & 0xFFFF);
+    }
+
+    public String getLocationName(int index) {
+        int record = offNodes + index * NODE_SIZE;
+        return readString(buffer.getInt(record + 4), buffer.getShort(record + 14) & 0xFFFF);
+    }
+
+    public String getAccessibilityInfo(int index) {
+        int record = offNodes + index * NODE_SIZE;
+        return readString(buffer.getInt(record + 8), buffer.getShort(record + 16) & 0xFFFF);
+    }
+
+    public int getFlags(int index) {
+        return buffer.get(offNodes + index * NODE_SIZE + 18) & 0xFF;
+    }
+
+    public float getQrOrientation(int index) {
+        return buffer.getFloat(offNodes + index * NODE_SIZE + 20);
+    }
+
+    public double getX(int index) {
+        return buffer.getDouble(offNodes + index * NODE_SIZE + 24);
+    }
+
+    public double getY(int index) {
+        return buffer.getDouble(offNodes + index * NODE_SIZE + 32);
+    }
+
+    /** First CSR edge of a node; its edges are [getEdgeStart(i), getEdgeStart(i + 1)). */
+    public int getEdgeStart(int index) {
+        return buffer.getInt(offRowPtr + index * 4);
+    }
+
+    public int getEdgeTarget(int edge) {
+        return buffer.getInt(offColIdx + edge * 4);
+    }
+
+    public double getEdgeWeight(int edge) {
+        return buffer.getDouble(offWeights + edge * 8);
+    }
+
+    /** Binary search over the sorted IDs; returns -1 if the ID is unknown. */
+    public int indexOf(String locationId) {
+        byte[] target = locationId.getBytes(StandardCharsets.UTF_8);
+        int lo = 0;
+        int hi = nodeCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int record = offNodes + mid * NODE_SIZE;
+            int cmp = compareString(buffer.getInt(record), buffer.getShort(record + 12) & 0xFFFF, target);
+            if (cmp == 0) return mid;
+            if (cmp < 0) lo = mid + 1;
+            else hi = mid - 1;
+        }
+        return -1;
+    }
+
+    private int compareString(int offset, int length, byte[] other) {
+        int base = offStrings + offset;
+        int n = Math.min(length, other.length);
+        for (int i = 0; i < n; i++) {
+            int a = buffer.get(base + i) & 0xFF;
+            int b = other[i] & 0xFF;
+            if (a != b) return a - b;
+        }
+        return length - other.length;
+    }
+
+    private String readString(int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offStrings + offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
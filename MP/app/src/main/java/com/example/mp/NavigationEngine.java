@@ -0,0 +1,178 @@
+// NavigationEngine.java
+
+package com.example.mp;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import com.chaquo.python.PyObject;
+import com.chaquo.python.Python;
+import com.chaquo.python.android.AndroidPlatform;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Application-wide owner of the compiled map, the Python NavigationProcessor and
+ * the thread they run on. {@link #warmUp} is called as soon as the home screen
+ * appears and does all of the slow start-up in the background (starting Python,
+ * importing cv2 and pyzbar, building the processor, one blank frame through
+ * detection), so that by the time the camera screen opens its first frame is
+ * analysed at full speed. Every activity shares this one instance.
+ */
+public final class NavigationEngine {
+
+    private static final String TAG = "NavigationEngine";
+
+    // Size of the blank warm-up frame; matches CameraX's default analysis resolution.
+    private static final int WARM_UP_WIDTH = 640;
+    private static final int WARM_UP_HEIGHT = 480;
+
+    public interface MapCallback {
+        /** Called on the main thread; map is null if the compiled map could not be loaded. */
+        void onMapLoaded(@Nullable NavMap map);
+    }
+
+    private static NavigationEngine instance;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "nav-analysis");
+        t.setPriority(Thread.NORM_PRIORITY - 1);
+        return t;
+    });
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final Object mapLock = new Object();
+    private boolean mapLoaded = false;
+    private final List<MapCallback> pendingMapCallbacks = new ArrayList<>();
+    private boolean started = false;
+
+    // Written once on the analysis thread, before anything else runs there.
+    @Nullable private volatile NavMap navMap;
+    // Everything below is only touched on the analysis thread.
+    @Nullable private PyObject navigationProcessor;
+    @Nullable private RouteEngine routeEngine;
+    @Nullable private NextHopTable nextHopTable;
+
+    private NavigationEngine() {}
+
+    public static synchronized NavigationEngine getInstance() {
+        if (instance == null) {
+            instance = new NavigationEngine();
+        }
+        return instance;
+    }
+
+    /** Starts loading everything in the background. Safe to call more than once. */
+    public synchronized void warmUp(Context context) {
+        if (started) {
+            return;
+        }
+        started = true;
+        Context appContext = context.getApplicationContext();
+
+        // The map comes first so that the destination list never waits for Python.
+        // It is delivered whatever happens, so no screen waits forever.
+        executor.execute(() -> {
+            NavMap map = null;
+            try {
+                map = NavMap.load(appContext);
+                routeEngine = new RouteEngine(map);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Failed to load compiled map, Python will use its built-in map", e);
+                map = null;
+                routeEngine = null;
+            } finally {
+                navMap = map;
+                deliverMap(map);
+            }
+        });
+
+        executor.execute(() -> {
+            long startTime = System.currentTimeMillis();
+            try {
+                if (!Python.isStarted()) {
+                    Python.start(new AndroidPlatform(appContext));
+                }
+                NavMap map = navMap;
+                String mapPath = map != null ? map.getPath() : null;
+                navigationProcessor = Python.getInstance().getModule("navigation_logic")
+                        .callAttr("NavigationProcessor", mapPath);
+                navigationProcessor.callAttr("warm_up", WARM_UP_WIDTH, WARM_UP_HEIGHT);
+                Log.i(TAG, "Navigation engine ready in " + (System.currentTimeMillis() - startTime) + " ms.");
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to create NavigationProcessor", e);
+            }
+        });
+
+        // Routing works without the next-hop table, so it comes last
+        executor.execute(() -> {
+            NavMap map = navMap;
+            if (map == null || routeEngine == null) return;
+            try {
+                nextHopTable = NextHopTable.forMap(map, routeEngine);
+            } catch (RuntimeException | OutOfMemoryError e) {
+                Log.e(TAG, "Failed to build next-hop table, routes will be searched", e);
+            }
+        });
+    }
+
+    /**
+     * Delivers the compiled map on the main thread as soon as it is loaded, or
+     * right away if it already is. {@link #warmUp} must have been called.
+     */
+    public void whenMapLoaded(MapCallback callback) {
+        synchronized (mapLock) {
+            if (!mapLoaded) {
+                pendingMapCallbacks.add(callback);
+                return;
+            }
+        }
+        NavMap map = navMap;
+        mainHandler.post(() -> callback.onMapLoaded(map));
+    }
+
+    private void deliverMap(@Nullable NavMap map) {
+        List<MapCallback> callbacks;
+        synchronized (mapLock) {
+            mapLoaded = true;
+            callbacks = new ArrayList<>(pendingMapCallbacks);
+            pendingMapCallbacks.clear();
+        }
+        for (MapCallback callback : callbacks) {
+            mainHandler.post(() -> callback.onMapLoaded(map));
+        }
+    }
+
+    /** The analysis thread; tasks queued here run after warm-up has finished. */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    @Nullable
+    NavMap getNavMap() {
+        return navMap;
+    }
+
+    /** Analysis thread only. Null if Python failed to start. */
+    @Nullable
+    PyObject getProcessor() {
+        return navigationProcessor;
+    }
+
+    /** Analysis thread only. Null without a compiled map. */
+    @Nullable
+    RouteEngine getRouteEngine() {
+        return routeEngine;
+    }
+
+    /** Analysis thread only. Null until built, without a compiled map, or if it is too large. */
+    @Nullable
+    NextHopTable getNextHopTable() {
+        return nextHopTable;
+    }
+}
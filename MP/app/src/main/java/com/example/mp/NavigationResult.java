@@ -0,0 +1,149 @@
+// NavigationResult.java
+
+package com.example.mp;
+
+import androidx.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Immutable outcome of analysing one camera frame. Built on the analysis thread
+ * and handed to the UI thread, so it must never hold Python objects.
+ */
+public final class NavigationResult {
+
+    public static final String STATUS_PATH_ERROR = "PATH_ERROR";
+
+    private final String status;
+    @Nullable private final float[] corners;
+    private final int imageWidth;
+    private final int imageHeight;
+    @Nullable private final String locationName;
+    @Nullable private final String nextWaypointName;
+    private final float targetAzimuth;
+    private final float targetDistance;
+    private final boolean hasTarget;
+    @Nullable private final String message;
+    private final boolean routePlanned;
+
+    private NavigationResult(Builder b) {
+        this.status = b.status;
+        this.corners = b.corners;
+        this.imageWidth = b.imageWidth;
+        this.imageHeight = b.imageHeight;
+        this.locationName = b.locationName;
+        this.nextWaypointName = b.nextWaypointName;
+        this.targetAzimuth = b.targetAzimuth;
+        this.targetDistance = b.targetDistance;
+        this.hasTarget = b.hasTarget;
+        this.message = b.message;
+        this.routePlanned = b.routePlanned;
+    }
+
+    public String getStatus() { return status; }
+
+    /** Corner coordinates as x0,y0,x1,y1,... or null when no code is in view. Do not modify. */
+    @Nullable public float[] getCorners() { return corners; }
+
+    public int getImageWidth() { return imageWidth; }
+
+    public int getImageHeight() { return imageHeight; }
+
+    @Nullable public String getLocationName() { return locationName; }
+
+    @Nullable public String getNextWaypointName() { return nextWaypointName; }
+
+    public float getTargetAzimuth() { return targetAzimuth; }
+
+    public float getTargetDistance() { return targetDistance; }
+
+    /** True when next waypoint, azimuth and distance were all present. */
+    public boolean hasTarget() { return hasTarget; }
+
+    @Nullable public String getMessage() { return message; }
+
+    /** True on the frame where the route was first planned from the confirmed location. */
+    public boolean isRoutePlanned() { return routePlanned; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof NavigationResult)) return false;
+        NavigationResult that = (NavigationResult) o;
+        return imageWidth == that.imageWidth
+                && imageHeight == that.imageHeight
+                && Float.compare(targetAzimuth, that.targetAzimuth) == 0
+                && Float.compare(targetDistance, that.targetDistance) == 0
+                && hasTarget == that.hasTarget
+                && routePlanned == that.routePlanned
+                && status.equals(that.status)
+                && Arrays.equals(corners, that.corners)
+                && Objects.equals(locationName, that.locationName)
+                && Objects.equals(nextWaypointName, that.nextWaypointName)
+                && Objects.equals(message, that.message);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Objects.hash(status, imageWidth, imageHeight, locationName, nextWaypointName,
+                targetAzimuth, targetDistance, hasTarget, message, routePlanned);
+        return 31 * result + Arrays.hashCode(corners);
+    }
+
+    public static final class Builder {
+        private String status;
+        private float[] corners;
+        private int imageWidth;
+        private int imageHeight;
+        private String locationName;
+        private String nextWaypointName;
+        private float targetAzimuth;
+        private float targetDistance;
+        private boolean hasTarget;
+        private String message;
+        private boolean routePlanned;
+
+        public Builder(String status) {
+            this.status = status;
+        }
+
+        public Builder status(String status) {
+            this.status = status;
+            return this;
+        }
+
+        public Builder corners(@Nullable float[] corners, int imageWidth, int imageHeight) {
+            this.corners = corners;
+            this.imageWidth = imageWidth;
+            this.imageHeight = imageHeight;
+            return this;
+        }
+
+        public Builder locationName(@Nullable String locationName) {
+            this.locationName = locationName;
+            return this;
+        }
+
+        public Builder target(String nextWaypointName, float azimuth, float distance) {
+            this.nextWaypointName = nextWaypointName;
+            this.targetAzimuth = azimuth;
+            this.targetDistance = distance;
+            this.hasTarget = true;
+            return this;
+        }
+
+        public Builder message(@Nullable String message) {
+            this.message = message;
+            return this;
+        }
+
+        public Builder routePlanned(boolean routePlanned) {
+            this.routePlanned = routePlanned;
+            return this;
+        }
+
+        public NavigationResult build() {
+            return new NavigationResult(this);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+// NavigationSession.java
+
+package com.example.mp;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Route state for one trip, kept entirely in Java: the planned path, where the
+ * user was last confirmed, and the next step toward the destination. Replaces
+ * NavigationProcessor._update_navigation_status so that confirming a location
+ * or replanning after going off track never calls into Python.
+ * Owned by the analysis thread.
+ */
+final class NavigationSession {
+
+    private final NavMap map;
+    private final RouteEngine routeEngine;
+    @Nullable private final NextHopTable nextHops;
+    private final int destination;
+    @Nullable private int[] path;
+
+    NavigationSession(NavMap map, RouteEngine routeEngine, @Nullable NextHopTable nextHops, int destination) {
+        this.map = map;
+        this.routeEngine = routeEngine;
+        this.nextHops = nextHops;
+        this.destination = destination;
+    }
+
+    boolean isPathPlanned() {
+        return path != null;
+    }
+
+    /**
+     * Plans the first route from the confirmed location. Fills the builder with
+     * the first step, or returns false if no route exists.
+     */
+    boolean planRoute(int location, NavigationResult.Builder builder) {
+        path = routeEngine.findShortestPath(location, destination);
+        if (path == null) {
+            builder.status(NavigationResult.STATUS_PATH_ERROR)
+                    .message("Could not find a path to " + destinationId() + ".");
+            return false;
+        }
+        // Starting at the destination is an arrival, not a route to announce
+        builder.routePlanned(location != destination);
+        update(location, builder);
+        return true;
+    }
+
+    /** Same states as _update_navigation_status for a planned route. */
+    void update(int location, NavigationResult.Builder builder) {
+        builder.locationName(map.getLocationName(location));
+        if (path == null) {
+            builder.status("LOCATION_CONFIRMED");
+            return;
+        }
+        if (location == destination) {
+            builder.status("ARRIVED");
+            return;
+        }
+
+        int step = indexInPath(location);
+        if (step < 0) {
+            int[] replanned = replan(location);
+            if (replanned != null) {
+                path = replanned;
+                builder.status("OFF_TRACK_RECALCULATED");
+            } else {
+                builder.status("OFF_TRACK_ERROR").message("Off track. Failed to recalculate.");
+            }
+            return;
+        }
+
+        if (step + 1 < path.length) {
+            int next = path[step + 1];
+            builder.status("NAVIGATING")
+                    .target(map.getLocationName(next), bearing(location, next), distance(location, next));
+        } else {
+            builder.status("LOCATION_CONFIRMED");
+        }
+    }
+
+    /** Off-track route from the next-hop table, without searching, when one is available. */
+    @Nullable
+    private int[] replan(int location) {
+        if (nextHops != null) return nextHops.path(location, destination);
+        return routeEngine.findShortestPath(location, destination);
+    }
+
+    private int indexInPath(int location) {
+        for (int i = 0; i < path.length; i++) {
+            if (path[i] == location) return i;
+        }
+        return -1;
+    }
+
+    private String destinationId() {
+        return map.getLocationId(destination);
+    }
+
+    /** Degrees clockwise from north (+Y), as RouteGuidance._calculate_bearing. */
+    private float bearing(int from, int to) {
+        double angle = Math.toDegrees(Math.atan2(map.getX(to) - map.getX(from), map.getY(to) - map.getY(from)));
+        if (angle < 0) angle += 360;
+        return (float) angle;
+    }
+
+    private float distance(int from, int to) {
+        return (float) Math.hypot(map.getX(to) - map.getX(from), map.getY(to) - map.getY(from));
+    }
+}
@@ -0,0 +1,170 @@
+// NextHopTable.java
+
+package com.example.mp;
+
+import android.util.Log;
+import androidx.annotation.Nullable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * All-pairs next hop for a compiled map, so that any scanned
+ * location yields the next waypoint toward any destination with one array
+ * read. Built once per map version from one {@link RouteEngine} shortest-path
+ * tree per destination, so following next hops from anywhere always stays on
+ * the same tree. Where two routes are equally short, the tree may pick the
+ * other one than a search started from the user's location would.
+ *
+ * Storage is n*n shorts, so maps whose table would exceed MAX_TABLE_BYTES
+ * get none and routing falls back to searching. A built table is saved next
+ * to the extracted map, named by the map checksum, and read back on later
+ * starts instead of being rebuilt.
+ */
+public final class NextHopTable {
+
+    private static final String TAG = "NextHopTable";
+
+    // Heap the table may take: 8 MB is about 2000 locations
+    static final long MAX_TABLE_BYTES = 8L * 1024 * 1024;
+
+    private static final int MAGIC = 0x504F484E; // "NHOP" little-endian
+    private static final int HEADER_SIZE = 12;
+    private static final String FILE_PREFIX = "nexthop_";
+
+    private static final Object CACHE_LOCK = new Object();
+    private static NextHopTable cached;
+
+    private final int checksum;
+    private final int nodeCount;
+    // Indexed [to * n + from], so one destination's column is contiguous
+    private final short[] nextHop;   // -1 when unreachable
+
+    private NextHopTable(int checksum, int nodeCount) {
+        this.checksum = checksum;
+        this.nodeCount = nodeCount;
+        this.nextHop = new short[nodeCount * nodeCount];
+    }
+
+    /**
+     * Returns the table for this map, reusing the previous one while the map
+     * checksum is unchanged. A changed map is read from its saved table, or
+     * built and saved if there is none. Null if the map is too large.
+     */
+    @Nullable
+    public static NextHopTable forMap(NavMap map, RouteEngine engine) {
+        int n = map.getNodeCount();
+        if (n > Short.MAX_VALUE || 2L * n * n > MAX_TABLE_BYTES) return null;
+        synchronized (CACHE_LOCK) {
+            if (cached == null || cached.checksum != map.getChecksum() || cached.nodeCount != n) {
+                File file = fileFor(map);
+                NextHopTable table = read(file, map.getChecksum(), n);
+                if (table == null) {
+                    table = build(map.getChecksum(), engine);
+                    write(table, file);
+                }
+                cached = table;
+            }
+            return cached;
+        }
+    }
+
+    private static File fileFor(NavMap map) {
+        File dir = new File(map.getPath()).getParentFile();
+        return new File(dir, FILE_PREFIX + Integer.toHexString(map.getChecksum()) + ".bin");
+    }
+
+    @Nullable
+    private static NextHopTable read(File file, int checksum, int nodeCount) {
+        if (!file.exists()) return null;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            if (channel.size() != HEADER_SIZE + 2L * nodeCount * nodeCount) return null;
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != checksum || buffer.getInt(8) != nodeCount) {
+                return null;
+            }
+            NextHopTable table = new NextHopTable(checksum, nodeCount);
+            buffer.position(HEADER_SIZE);
+            buffer.asShortBuffer().get(table.nextHop);
+            return table;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read " + file + ", rebuilding", e);
+            return null;
+        }
+    }
+
+    /** Saves the table through a temporary file and drops tables of older map versions. */
+    private static void write(NextHopTable table, File file) {
+        File dir = file.getParentFile();
+        File tmp = new File(file.getPath() + ".tmp");
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 2 * table.nextHop.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(table.checksum).putInt(table.nodeCount);
+        buffer.asShortBuffer().put(table.nextHop);
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(buffer.array());
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot save " + file, e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            Log.w(TAG, "Cannot move table into " + file);
+            tmp.delete();
+            return;
+        }
+        File[] stale = dir != null ? dir.listFiles((d, name) -> name.startsWith(FILE_PREFIX)) : null;
+        if (stale != null) {
+            for (File old : stale) {
+                if (!old.equals(file)) old.delete();
+            }
+        }
+    }
+
+    private static NextHopTable build(int checksum, RouteEngine engine) {
+        int n = engine.getNodeCount();
+        NextHopTable table = new NextHopTable(checksum, n);
+        for (int to = 0; to < n; to++) {
+            // Corridors are two-way, so the shortest-path tree rooted at the
+            // destination gives every location's next hop toward it: its parent.
+            engine.search(to, -1);
+            int row = to * n;
+            for (int from = 0; from < n; from++) {
+                table.nextHop[row + from] = (short) (from == to ? to : engine.predecessor(from));
+            }
+        }
+        return table;
+    }
+
+    public int getChecksum() {
+        return checksum;
+    }
+
+    /** First location after {@code from} on the shortest route to {@code to}; {@code from} if equal, -1 if unreachable. */
+    public int nextHop(int from, int to) {
+        return nextHop[to * nodeCount + from];
+    }
+
+    /** Full route by following next hops, or null if unreachable. */
+    @Nullable
+    public int[] path(int from, int to) {
+        if (nextHop(from, to) < 0) return null;
+        int length = 1;
+        for (int node = from; node != to; node = nextHop(node, to)) {
+            length++;
+        }
+        int[] path = new int[length];
+        int i = 0;
+        for (int node = from; node != to; node = nextHop(node, to)) {
+            path[i++] = node;
+        }
+        path[i] = to;
+        return path;
+    }
+}
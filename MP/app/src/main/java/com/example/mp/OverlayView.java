@@ -3,17 +3,49 @@ package com.example.mp;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
-import android.graphics.PointF;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.view.View;
-import com.chaquo.python.PyObject;
-import java.util.List;
 
+/**
+ * Green box around the QR code in view. Analysis results arrive more slowly
+ * than the display refreshes, so between results the box keeps moving at the
+ * velocity of the last two corner sets, eases out any jump when a new set
+ * arrives, and fades out when the code is lost instead of vanishing.
+ */
 public class OverlayView extends View {
 
+    private static final int MAX_CORNERS = 4;
+
+    // Stop extrapolating this long after the last result, so a stall does not fling the box away
+    private static final long MAX_PREDICT_MS = 150;
+    // Results further apart than this are too old to derive a velocity from
+    private static final long MAX_VELOCITY_GAP_MS = 500;
+    // Time constant for easing out the gap between the prediction and a new result
+    private static final float CORRECTION_TAU_MS = 50f;
+    private static final long FADE_MS = 300;
+
     private final Paint paint;
-    private PointF[] corners;
+    private final Matrix imageToView = new Matrix();
+
+    // Last result, its arrival time and the velocity estimated from the one before, in image coordinates
+    private final float[] lastCorners = new float[MAX_CORNERS * 2];
+    private final float[] velocity = new float[MAX_CORNERS * 2];    // Per millisecond
+    private final float[] correction = new float[MAX_CORNERS * 2];
+    private long lastTime;
+    private long correctionTime;
+    private int cornerCount = 0;
+    private boolean lost = false;
+    private long lostTime;
+
+    // Per-frame scratch, reused
+    private final float[] predicted = new float[MAX_CORNERS * 2];
+    private final float[] viewCorners = new float[MAX_CORNERS * 2];
+    // One segment (4 floats) per edge, for a single drawLines call
+    private final float[] lines = new float[MAX_CORNERS * 4];
+
     private int imageWidth;
     private int imageHeight;
 
@@ -25,42 +57,118 @@ public class OverlayView extends View {
         paint.setStrokeWidth(8f);
     }
 
-    public void setCorners(PyObject pyCorners, int width, int height) {
-        if (pyCorners == null) {
-            this.corners = null;
+    /** Adds a new corner set to the track; call on the main thread. */
+    public void setCorners(float[] flatCorners, int width, int height) {
+        if (flatCorners == null) {
+            clear();
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        if (width != imageWidth || height != imageHeight) {
+            imageWidth = width;
+            imageHeight = height;
+            updateMatrix();
+        }
+        int count = Math.min(flatCorners.length / 2, MAX_CORNERS);
+        int length = count * 2;
+
+        boolean continues = count == cornerCount && !lost && now - lastTime <= MAX_VELOCITY_GAP_MS;
+        if (continues) {
+            // Start from where the box is drawn now, so the new result does not make it jump
+            predict(now, predicted);
+            float dt = Math.max(1, now - lastTime);
+            for (int i = 0; i < length; i++) {
+                velocity[i] = (flatCorners[i] - lastCorners[i]) / dt;
+                correction[i] = predicted[i] - flatCorners[i];
+            }
         } else {
-            List<PyObject> cornerList = pyCorners.asList();
-            this.corners = new PointF[cornerList.size()];
-            for (int i = 0; i < cornerList.size(); i++) {
-                List<PyObject> point = cornerList.get(i).asList();
-                this.corners[i] = new PointF(point.get(0).toFloat(), point.get(1).toFloat());
+            for (int i = 0; i < length; i++) {
+                velocity[i] = 0;
+                correction[i] = 0;
             }
         }
-        this.imageWidth = width;
-        this.imageHeight = height;
-        postInvalidate(); // Trigger a redraw
+        System.arraycopy(flatCorners, 0, lastCorners, 0, length);
+        cornerCount = count;
+        lastTime = now;
+        correctionTime = now;
+        lost = false;
+        invalidate();
     }
 
+    /** Fades the box out from where it is heading. */
     public void clear() {
-        this.corners = null;
-        postInvalidate();
+        if (cornerCount == 0 || lost) return;
+        lost = true;
+        lostTime = SystemClock.uptimeMillis();
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateMatrix();
+    }
+
+    private void updateMatrix() {
+        if (imageWidth > 0 && imageHeight > 0) {
+            imageToView.setScale((float) getWidth() / imageWidth, (float) getHeight() / imageHeight);
+        } else {
+            imageToView.reset();
+        }
+    }
+
+    /** Constant-velocity position at time t, plus the decaying correction, in image coordinates. */
+    private void predict(long t, float[] out) {
+        float dt = Math.min(Math.max(0, t - lastTime), MAX_PREDICT_MS);
+        float decay = (float) Math.exp(-(t - correctionTime) / CORRECTION_TAU_MS);
+        for (int i = 0; i < cornerCount * 2; i++) {
+            out[i] = lastCorners[i] + velocity[i] * dt + correction[i] * decay;
+        }
+    }
+
+    private boolean isAnimating(long t) {
+        if (lost) return true;
+        if (t - correctionTime < 5 * CORRECTION_TAU_MS) return true;
+        if (t - lastTime >= MAX_PREDICT_MS) return false;
+        for (int i = 0; i < cornerCount * 2; i++) {
+            if (velocity[i] != 0) return true;
+        }
+        return false;
+    }
+
+    private float alphaAt(long t) {
+        if (!lost) return 1f;
+        return Math.max(0f, 1f - (float) (t - lostTime) / FADE_MS);
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        if (corners != null && imageWidth > 0 && imageHeight > 0) {
-            float scaleX = (float) getWidth() / imageWidth;
-            float scaleY = (float) getHeight() / imageHeight;
-            for (int i = 0; i < corners.length; i++) {
-                PointF p1 = corners[i];
-                PointF p2 = corners[(i + 1) % corners.length];
-                float startX = p1.x * scaleX;
-                float startY = p1.y * scaleY;
-                float endX = p2.x * scaleX;
-                float endY = p2.y * scaleY;
-                canvas.drawLine(startX, startY, endX, endY, paint);
-            }
+        if (cornerCount < 2 || imageWidth <= 0 || imageHeight <= 0) return;
+
+        long now = SystemClock.uptimeMillis();
+        float alpha = alphaAt(now);
+        if (alpha <= 0f) {
+            cornerCount = 0;
+            lost = false;
+            return;
+        }
+
+        predict(now, predicted);
+        imageToView.mapPoints(viewCorners, 0, predicted, 0, cornerCount);
+        for (int i = 0; i < cornerCount; i++) {
+            int next = (i + 1) % cornerCount;
+            lines[4 * i] = viewCorners[2 * i];
+            lines[4 * i + 1] = viewCorners[2 * i + 1];
+            lines[4 * i + 2] = viewCorners[2 * next];
+            lines[4 * i + 3] = viewCorners[2 * next + 1];
+        }
+        paint.setAlpha(Math.round(255 * alpha));
+        canvas.drawLines(lines, 0, cornerCount * 4, paint);
+        paint.setAlpha(255);
+
+        if (isAnimating(now)) {
+            postInvalidateOnAnimation();
         }
     }
-}
\ No newline at end of file
+}
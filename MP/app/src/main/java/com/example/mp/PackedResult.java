@@ -0,0 +1,65 @@
+// PackedResult.java
+
+package com.example.mp;
+
+/**
+ * Reusable Java side of the fixed-layout result that NavigationProcessor writes
+ * in one call (see PACKED_* in navigation_logic.py). Owned by the analysis
+ * thread and overwritten on every frame.
+ */
+final class PackedResult {
+
+    static final int SIZE = 13;
+
+    private static final int STATUS = 0;
+    private static final int CORNER_COUNT = 1;
+    private static final int CORNERS = 2;
+    private static final int LOCATION_INDEX = 10;
+    private static final int FRAME_WIDTH = 11;
+    private static final int FRAME_HEIGHT = 12;
+
+    /** Status names indexed by the codes in navigation_logic.STATUS_CODES. */
+    static final String[] STATUS_NAMES = {
+            "SCANNING",
+            "DETECTED",
+            "LOCATION_CONFIRMED",
+            "NAVIGATING",
+            "ARRIVED",
+            "OFF_TRACK_RECALCULATED",
+            "OFF_TRACK_ERROR",
+            "ERROR",
+    };
+
+    /** Passed to Python by reference and filled in place. */
+    final float[] data = new float[SIZE];
+
+    String status() {
+        int code = (int) data[STATUS];
+        return (code >= 0 && code < STATUS_NAMES.length) ? STATUS_NAMES[code] : "ERROR";
+    }
+
+    int cornerCount() {
+        return (int) data[CORNER_COUNT];
+    }
+
+    /** Copies the corners out, since this buffer is reused; null when there are none. */
+    float[] copyCorners() {
+        int count = cornerCount();
+        if (count == 0) return null;
+        float[] corners = new float[count * 2];
+        System.arraycopy(data, CORNERS, corners, 0, count * 2);
+        return corners;
+    }
+
+    int locationIndex() {
+        return (int) data[LOCATION_INDEX];
+    }
+
+    int frameWidth() {
+        return (int) data[FRAME_WIDTH];
+    }
+
+    int frameHeight() {
+        return (int) data[FRAME_HEIGHT];
+    }
+}
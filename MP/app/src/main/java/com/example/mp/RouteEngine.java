@@ -0,0 +1,163 @@
+// RouteEngine.java
+
+package com.example.mp;
+
+import androidx.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * Dijkstra over the compiled map's CSR adjacency, using primitive arrays and a
+ * binary heap that are allocated once and reused for every search.
+ *
+ * Mirrors RouteGuidance.find_shortest_path: heap entries are ordered by
+ * (distance, location index) and index order equals location ID order, so
+ * equal-length routes are broken exactly as the Python heapq breaks them.
+ * Not thread-safe; owned by the analysis thread.
+ */
+public final class RouteEngine {
+
+    private final int nodeCount;
+    private final int[] rowPtr;
+    private final int[] colIdx;
+    private final double[] weights;
+
+    private final double[] distances;
+    private final int[] predecessors;
+    private final boolean[] visited;
+    private final int[] pathScratch;
+
+    // Binary min-heap with lazy deletion, as in the Python version: a node may
+    // be pushed once per relaxed edge, so edgeCount + 1 entries always suffice.
+    private final double[] heapKeys;
+    private final int[] heapNodes;
+    private int heapSize;
+
+    public RouteEngine(NavMap map) {
+        nodeCount = map.getNodeCount();
+        int edgeCount = map.getEdgeCount();
+        rowPtr = new int[nodeCount + 1];
+        for (int i = 0; i <= nodeCount; i++) {
+            rowPtr[i] = map.getEdgeStart(i);
+        }
+        colIdx = new int[edgeCount];
+        weights = new double[edgeCount];
+        for (int e = 0; e < edgeCount; e++) {
+            colIdx[e] = map.getEdgeTarget(e);
+            weights[e] = map.getEdgeWeight(e);
+        }
+        distances = new double[nodeCount];
+        predecessors = new int[nodeCount];
+        visited = new boolean[nodeCount];
+        pathScratch = new int[nodeCount];
+        heapKeys = new double[edgeCount + 1];
+        heapNodes = new int[edgeCount + 1];
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Shortest path as location indices from start to end inclusive, or null if
+     * either index is invalid or end is unreachable.
+     */
+    @Nullable
+    public int[] findShortestPath(int start, int end) {
+        if (start < 0 || start >= nodeCount || end < 0 || end >= nodeCount) return null;
+        if (start == end) return new int[]{start};
+
+        if (!search(start, end)) return null;
+
+        int length = 0;
+        for (int node = end; node != -1; node = predecessors[node]) {
+            pathScratch[length++] = node;
+        }
+        int[] path = new int[length];
+        for (int i = 0; i < length; i++) {
+            path[i] = pathScratch[length - 1 - i];
+        }
+        return path;
+    }
+
+    /**
+     * Runs Dijkstra from start, stopping early once end is settled (end = -1
+     * settles every node). Returns whether end was reached.
+     */
+    boolean search(int start, int end) {
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        Arrays.fill(predecessors, -1);
+        Arrays.fill(visited, false);
+        heapSize = 0;
+
+        distances[start] = 0;
+        push(0, start);
+        while (heapSize > 0) {
+            double currentDistance = heapKeys[0];
+            int current = heapNodes[0];
+            pop();
+            if (visited[current]) continue;
+            visited[current] = true;
+            if (current == end) break;
+
+            for (int e = rowPtr[current]; e < rowPtr[current + 1]; e++) {
+                int neighbor = colIdx[e];
+                if (visited[neighbor]) continue;
+                double distance = currentDistance + weights[e];
+                if (distance < distances[neighbor]) {
+                    distances[neighbor] = distance;
+                    predecessors[neighbor] = current;
+                    push(distance, neighbor);
+                }
+            }
+        }
+        return end < 0 || distances[end] != Double.POSITIVE_INFINITY;
+    }
+
+    /** Predecessor of a node in the tree built by the last {@link #search}. */
+    int predecessor(int node) {
+        return predecessors[node];
+    }
+
+    /** Distance of a node in the tree built by the last {@link #search}. */
+    double distance(int node) {
+        return distances[node];
+    }
+
+    private static boolean less(double keyA, int nodeA, double keyB, int nodeB) {
+        return keyA < keyB || (keyA == keyB && nodeA < nodeB);
+    }
+
+    private void push(double key, int node) {
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!less(key, node, heapKeys[parent], heapNodes[parent])) break;
+            heapKeys[i] = heapKeys[parent];
+            heapNodes[i] = heapNodes[parent];
+            i = parent;
+        }
+        heapKeys[i] = key;
+        heapNodes[i] = node;
+    }
+
+    private void pop() {
+        int last = --heapSize;
+        if (last == 0) return;
+        double key = heapKeys[last];
+        int node = heapNodes[last];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= last) break;
+            if (child + 1 < last && less(heapKeys[child + 1], heapNodes[child + 1], heapKeys[child], heapNodes[child])) {
+                child++;
+            }
+            if (!less(heapKeys[child], heapNodes[child], key, node)) break;
+            heapKeys[i] = heapKeys[child];
+            heapNodes[i] = heapNodes[child];
+            i = child;
+        }
+        heapKeys[i] = key;
+        heapNodes[i] = node;
+    }
+}
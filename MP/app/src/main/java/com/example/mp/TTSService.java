@@ -3,17 +3,106 @@
 package com.example.mp;
 
 import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
 import android.speech.tts.TextToSpeech;
+import android.speech.tts.UtteranceProgressListener;
+import android.speech.tts.Voice;
 import android.util.Log;
+import androidx.annotation.Nullable;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Single speech channel for the app. Utterances are scheduled here rather than
+ * flushed straight into the engine: one is handed to TextToSpeech at a time,
+ * higher priority speech interrupts lower, identical pending sentences are
+ * merged, heading cues are rate limited, and anything spoken before the engine
+ * is ready waits in a small buffer instead of being dropped.
+ *
+ * Phrases that are spoken again and again are synthesised once to the cache
+ * directory by a second, background engine and registered with addSpeech, so
+ * speaking them plays the stored clip; any other text is synthesised live.
+ */
 public class TTSService {
 
     private static final String TAG = "TTSService";
+
+    /** In order of importance; a higher class interrupts a lower one. */
+    public enum Priority { SAFETY, ARRIVAL, INSTRUCTION, HEADING }
+
+    private static final int MAX_PENDING = 8;
+    private static final int MAX_PENDING_BEFORE_INIT = 4;
+    // Heading cues repeat constantly; never speak them closer together than this
+    private static final long HEADING_MIN_INTERVAL_MS = 1000;
+    // ...and never repeat the same heading cue within this window
+    private static final long HEADING_REPEAT_INTERVAL_MS = 3000;
+
+    private static final float SPEECH_RATE = 1.0f;
+    private static final String CACHE_DIR = "tts";
+    private static final String CACHE_UTTERANCE_PREFIX = "cache-";
+
+    /** Fixed sentences worth caching; "Proceed to" phrases are added per map. */
+    private static final List<String> COMMON_PHRASES = Arrays.asList(
+            "Straight ahead.",
+            "Turn right",
+            "Turn left",
+            "QR Code detected, hold steady.",
+            "Scan QR code to get next step.",
+            "Off track. New path calculated.",
+            "You have arrived at your destination!",
+            "Please scan the nearest QR code to begin navigation.");
+
     private static TTSService instance;
     private TextToSpeech tts;
     private boolean isInitialized = false;
 
+    // Phrase cache, filled by its own engine so synthesis never queues behind speech
+    private TextToSpeech cacheTts;
+    private boolean isCacheReady = false;
+    private File cacheDir;
+    private final Set<String> phrasesToCache = new LinkedHashSet<>();       // Guarded by this
+    private final Map<String, PendingClip> pendingClips = new ConcurrentHashMap<>();
+
+    private static final class PendingClip {
+        final String text;
+        final File file;
+
+        PendingClip(String text, File file) {
+            this.text = text;
+            this.file = file;
+        }
+    }
+
+    private static final class Utterance {
+        final String text;
+        final Priority priority;
+        final String id;
+
+        Utterance(String text, Priority priority, String id) {
+            this.text = text;
+            this.priority = priority;
+            this.id = id;
+        }
+    }
+
+    // Guarded by this
+    private final List<Utterance> pending = new ArrayList<>();
+    private Utterance speaking;
+    private long nextUtteranceId = 0;
+    private long lastHeadingTime = 0;
+    private String lastHeadingText;
+
     private TTSService() {}
 
     public static synchronized TTSService getInstance() {
@@ -24,43 +113,260 @@ public class TTSService {
     }
 
     public void initialize(Context context) {
-        if (isInitialized) {
+        // The engines are created once; isInitialized only turns true in onInit
+        if (tts != null) {
             return;
         }
+        cacheDir = new File(context.getCacheDir(), CACHE_DIR);
         tts = new TextToSpeech(context.getApplicationContext(), status -> {
             if (status == TextToSpeech.SUCCESS) {
                 int langStatus = tts.setLanguage(Locale.US);
                 if (langStatus == TextToSpeech.LANG_MISSING_DATA || langStatus == TextToSpeech.LANG_NOT_SUPPORTED) {
                     Log.e(TAG, "US-English TTS not supported.");
                 } else {
-                    isInitialized = true;
+                    tts.setSpeechRate(SPEECH_RATE);
+                    tts.setOnUtteranceProgressListener(new ProgressListener());
+                    synchronized (this) {
+                        isInitialized = true;
+                        speakNext();
+                        fillCache();
+                    }
                     Log.i(TAG, "TTS initialized successfully.");
                 }
             } else {
                 Log.e(TAG, "TTS initialization failed.");
             }
         });
+        cacheTts = new TextToSpeech(context.getApplicationContext(), status -> {
+            if (status != TextToSpeech.SUCCESS) {
+                Log.e(TAG, "Phrase cache engine failed to start; speaking everything live.");
+                return;
+            }
+            cacheTts.setLanguage(Locale.US);
+            cacheTts.setSpeechRate(SPEECH_RATE);
+            cacheTts.setOnUtteranceProgressListener(new CacheListener());
+            synchronized (this) {
+                isCacheReady = true;
+                fillCache();
+            }
+        });
+        precache(COMMON_PHRASES);
     }
 
-    public void speak(String text, int queueMode) {
-        if (!isInitialized || tts == null) {
-            Log.e(TAG, "TTS not initialized, cannot speak.");
+    /** Adds "Proceed to <name>" for every location on the map to the phrase cache. */
+    public void precacheLocations(@Nullable NavMap navMap) {
+        if (navMap == null) return;
+        List<String> phrases = new ArrayList<>(navMap.getNodeCount());
+        for (int i = 0; i < navMap.getNodeCount(); i++) {
+            phrases.add("Proceed to " + navMap.getLocationName(i));
+        }
+        precache(phrases);
+    }
+
+    public synchronized void precache(List<String> phrases) {
+        phrasesToCache.addAll(phrases);
+        fillCache();
+    }
+
+    /**
+     * Registers clips already on disk and synthesises the missing ones. Needs both
+     * engines, since the key includes the speaking engine's voice. Called with the lock held.
+     */
+    private void fillCache() {
+        if (!isInitialized || !isCacheReady || phrasesToCache.isEmpty()) return;
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            Log.e(TAG, "Cannot create phrase cache directory " + cacheDir);
             return;
         }
-        tts.speak(text, queueMode, null, null);
+        Voice voice = tts.getVoice();
+        if (voice != null) {
+            cacheTts.setVoice(voice);
+        }
+        String voiceName = voice != null ? voice.getName() : "default";
+        for (String text : phrasesToCache) {
+            String key = cacheKey(text, voiceName);
+            File file = new File(cacheDir, key + ".wav");
+            if (file.length() > 0) {
+                tts.addSpeech(text, file);
+            } else {
+                // Written under a temporary name so an interrupted write is never taken as a clip
+                String utteranceId = CACHE_UTTERANCE_PREFIX + key;
+                pendingClips.put(utteranceId, new PendingClip(text, file));
+                cacheTts.synthesizeToFile(text, new Bundle(), partialFile(file), utteranceId);
+            }
+        }
+        phrasesToCache.clear();
+    }
+
+    private static File partialFile(File file) {
+        return new File(file.getPath() + ".part");
+    }
+
+    private static String cacheKey(String text, String voiceName) {
+        String source = text + "|" + voiceName + "|" + SPEECH_RATE;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format(Locale.US, "%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(source.hashCode());
+        }
+    }
+
+    /**
+     * Legacy entry point. QUEUE_FLUSH replaces whatever instruction is pending or
+     * playing (but never interrupts safety or arrival speech); QUEUE_ADD waits.
+     */
+    public void speak(String text, int queueMode) {
+        enqueue(text, Priority.INSTRUCTION, queueMode == TextToSpeech.QUEUE_FLUSH);
     }
 
     public void speak(String text) {
         speak(text, TextToSpeech.QUEUE_FLUSH);
     }
 
+    /** Queues text behind anything of equal or higher priority; interrupts lower priority speech. */
+    public void speak(String text, Priority priority) {
+        enqueue(text, priority, false);
+    }
+
+    private synchronized void enqueue(String text, Priority priority, boolean replace) {
+        if (text == null || text.isEmpty()) return;
+
+        if (priority == Priority.HEADING) {
+            long now = SystemClock.elapsedRealtime();
+            if (now - lastHeadingTime < HEADING_MIN_INTERVAL_MS
+                    || (text.equals(lastHeadingText) && now - lastHeadingTime < HEADING_REPEAT_INTERVAL_MS)) {
+                return;
+            }
+            lastHeadingTime = now;
+            lastHeadingText = text;
+            // Only the latest heading is worth hearing
+            removePending(Priority.HEADING);
+        }
+        if (replace) {
+            removePendingAtOrBelow(priority);
+        }
+
+        // The same sentence already queued or playing says nothing new
+        if (speaking != null && speaking.text.equals(text) && !replace) return;
+        for (Utterance u : pending) {
+            if (u.text.equals(text)) return;
+        }
+
+        Utterance utterance = new Utterance(text, priority, "utt-" + nextUtteranceId++);
+        int index = 0;
+        while (index < pending.size() && pending.get(index).priority.ordinal() <= priority.ordinal()) {
+            index++;
+        }
+        pending.add(index, utterance);
+
+        int capacity = isInitialized ? MAX_PENDING : MAX_PENDING_BEFORE_INIT;
+        while (pending.size() > capacity) {
+            // Drop the least important, newest entry
+            Utterance dropped = pending.remove(pending.size() - 1);
+            Log.w(TAG, "Speech queue full, dropping: " + dropped.text);
+        }
+
+        if (!isInitialized || tts == null) return;
+        if (speaking == null) {
+            speakNext();
+        } else if (priority.ordinal() < speaking.priority.ordinal()
+                || (replace && priority.ordinal() <= speaking.priority.ordinal())) {
+            // Interrupt; QUEUE_FLUSH in speakNext cuts the current utterance off
+            speaking = null;
+            speakNext();
+        }
+    }
+
+    private void removePending(Priority priority) {
+        for (int i = pending.size() - 1; i >= 0; i--) {
+            if (pending.get(i).priority == priority) pending.remove(i);
+        }
+    }
+
+    private void removePendingAtOrBelow(Priority priority) {
+        for (int i = pending.size() - 1; i >= 0; i--) {
+            if (pending.get(i).priority.ordinal() >= priority.ordinal()) pending.remove(i);
+        }
+    }
+
+    // Called with the lock held
+    private void speakNext() {
+        if (!isInitialized || tts == null || speaking != null || pending.isEmpty()) return;
+        speaking = pending.remove(0);
+        tts.speak(speaking.text, TextToSpeech.QUEUE_FLUSH, null, speaking.id);
+    }
+
+    private synchronized void onUtteranceFinished(String utteranceId) {
+        if (speaking != null && speaking.id.equals(utteranceId)) {
+            speaking = null;
+            speakNext();
+        }
+    }
+
+    private class ProgressListener extends UtteranceProgressListener {
+        @Override
+        public void onStart(String utteranceId) {}
+
+        @Override
+        public void onDone(String utteranceId) {
+            onUtteranceFinished(utteranceId);
+        }
+
+        @Override
+        public void onStop(String utteranceId, boolean interrupted) {
+            onUtteranceFinished(utteranceId);
+        }
+
+        @Override
+        public void onError(String utteranceId) {
+            onUtteranceFinished(utteranceId);
+        }
+    }
+
+    private class CacheListener extends UtteranceProgressListener {
+        @Override
+        public void onStart(String utteranceId) {}
+
+        @Override
+        public void onDone(String utteranceId) {
+            PendingClip clip = pendingClips.remove(utteranceId);
+            if (clip == null || !partialFile(clip.file).renameTo(clip.file)) return;
+            synchronized (TTSService.this) {
+                if (isInitialized && clip.file.length() > 0) {
+                    tts.addSpeech(clip.text, clip.file);
+                }
+            }
+        }
+
+        @Override
+        public void onError(String utteranceId) {
+            PendingClip clip = pendingClips.remove(utteranceId);
+            if (clip != null) {
+                partialFile(clip.file).delete();
+            }
+        }
+    }
 
     public void shutdown() {
+        synchronized (this) {
+            pending.clear();
+            speaking = null;
+            isInitialized = false;
+            isCacheReady = false;
+        }
         if (tts != null) {
             tts.stop();
             tts.shutdown();
-            isInitialized = false;
+        }
+        if (cacheTts != null) {
+            cacheTts.stop();
+            cacheTts.shutdown();
         }
         instance = null;
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,3 @@
-import matplotlib.pyplot as plt
-import matplotlib.patches as mpatches
 from typing import List, Optional
 
 class BuildingMap:
@@ -64,6 +62,12 @@ class BuildingMap:
         }
 
     def plot_map(self, path: Optional[List[str]] = None, filename: str = "map.png"):
+        # Imported here so that loading the map data never pays for matplotlib
+        import matplotlib
+        matplotlib.use("Agg")
+        import matplotlib.pyplot as plt
+        import matplotlib.patches as mpatches
+
         fig, ax = plt.subplots(1, 1, figsize=(18, 10))
         room_color = '#90EE90'
         toilet_color = '#FFB6C1'
@@ -8,23 +8,52 @@ from typing import Dict, Any, Optional, List
 
 # Assuming these modules are in the same directory within the Android project
 from map_building import BuildingMap
-from qr_detection import QRDetectionModule
+from qr_detection import QRDetectionModule, ChromaPlanes
 from qr_decoder import QRDecoder, LocationInfo
 from route_guidance import RouteGuidance
+from navmap import NavMap
+
+# Fixed-layout result written into a caller-owned float array (see _pack_result).
+# Must match com.example.mp.PackedResult.
+PACKED_RESULT_SIZE = 13
+PACKED_STATUS = 0
+PACKED_CORNER_COUNT = 1
+PACKED_CORNERS = 2          # x0, y0 ... x3, y3
+PACKED_LOCATION_INDEX = 10  # NavMap index of the current location, -1 if unknown
+PACKED_FRAME_WIDTH = 11     # Size of the image the corners refer to
+PACKED_FRAME_HEIGHT = 12
+
+STATUS_CODES = {
+    "SCANNING": 0,
+    "DETECTED": 1,
+    "LOCATION_CONFIRMED": 2,
+    "NAVIGATING": 3,
+    "ARRIVED": 4,
+    "OFF_TRACK_RECALCULATED": 5,
+    "OFF_TRACK_ERROR": 6,
+    "ERROR": 7,
+}
 
 class NavigationProcessor:
     """
     Manages the entire navigation lifecycle for an Android application.
     """
-    def __init__(self):
+    def __init__(self, map_path: Optional[str] = None):
         print("Python: Initializing NavigationProcessor...")
         try:
+            # One memory-mapped map shared by the decoder and the route planner
+            self.navmap: Optional[NavMap] = NavMap(map_path) if map_path else NavMap.open_default()
             self.detector = QRDetectionModule()
-            self.decoder = QRDecoder()
-            self.guidance = RouteGuidance()
+            self.decoder = QRDecoder(navmap=self.navmap)
+            self.guidance = RouteGuidance(navmap=self.navmap)
             self.current_location: Optional[LocationInfo] = None
             self.destination_id: Optional[str] = None
             self.current_path: Optional[List[str]] = None
+            self._nv21_buffer: Optional[np.ndarray] = None
+            # Detect and decode on the Y plane only; chroma is read inside found codes
+            self.luma_only = True
+            self.last_message: Optional[str] = None
+            self._packed = [0.0] * PACKED_RESULT_SIZE
             print("Python: NavigationProcessor initialized successfully.")
         except Exception as e:
             print(f"PYTHON CRITICAL: Failed to initialize NavigationProcessor: {e}")
@@ -67,32 +96,175 @@ class NavigationProcessor:
                 return {"status": "ERROR", "message": f"Incorrect buffer size. Expected {expected_size}, got {len(image_bytes)}."}
             yuv_image = np.frombuffer(image_bytes, dtype=np.uint8).reshape(height + height // 2, width)
             bgr_frame = cv2.cvtColor(yuv_image, cv2.COLOR_YUV2BGR_NV21)
-            resized_frame = cv2.resize(bgr_frame, (self.detector.frame_width, self.detector.frame_height))
+            return self._process_bgr_frame(bgr_frame)
+        except Exception as e:
+            print(f"PYTHON CRASH: An error occurred in process_camera_frame: {e}")
+            traceback.print_exc()
+            return {"status": "ERROR", "message": f"An internal Python error occurred: {e}"}
 
-            targets = self.detector.detect_qr_codes(resized_frame)
-            nearest_qr = self.detector.get_nearest_qr(targets)
-            if not nearest_qr:
-                return {"status": "SCANNING"}
+    def process_camera_planes(self, y_plane, u_plane, v_plane, width: int, height: int,
+                              y_row_stride: int, uv_row_stride: int, uv_pixel_stride: int,
+                              out=None, decimation: int = 1):
+        """
+        Same as process_camera_frame, but takes the three YUV_420_888 planes as they
+        came out of CameraX. The planes are viewed through the buffer protocol with
+        their row/pixel strides, so no per-frame bytes object is built.
+
+        If `out` (a float array of PACKED_RESULT_SIZE) is given, the result is
+        written into it and only the status code is returned; otherwise the
+        result dictionary is returned, which is meant for debugging.
+
+        `decimation` (1 or 2, chosen by the Java AnalysisGovernor) reads every
+        n-th pixel of each plane through the strides and shrinks the detector's
+        working size to match, so a throttled scan touches a quarter of the pixels.
+        """
+        result = self._process_camera_planes(y_plane, u_plane, v_plane, width, height,
+                                             y_row_stride, uv_row_stride, uv_pixel_stride,
+                                             max(1, int(decimation)))
+        if out is None:
+            return result
+        return self._pack_result(result, out)
+
+    def get_last_message(self) -> Optional[str]:
+        """Message of the last packed result, fetched by Java only for error statuses."""
+        return self.last_message
+
+    def warm_up(self, width: int, height: int) -> None:
+        """
+        Push one blank frame through the same plane path the camera uses, and load
+        libzbar with one decode, so the first real frame pays no first-call cost.
+        """
+        y_plane = bytearray(width * height)
+        uv_plane = bytearray(width * height // 2)
+        self.process_camera_planes(y_plane, uv_plane, uv_plane, width, height,
+                                   width, width, 2, [0.0] * PACKED_RESULT_SIZE)
+        self.decoder.scanner.scan(np.zeros((32, 32), dtype=np.uint8))
+        self.reset()
+
+    def reset(self) -> None:
+        """Forget the previous trip so one processor can serve the next."""
+        self.current_location = None
+        self.destination_id = None
+        self.current_path = None
+        self.last_message = None
+        self.detector.reset_tracking()
 
-            qr_corners = nearest_qr.corners
-            location_info = self.decoder.read_qr_code(nearest_qr, resized_frame)
-            if not location_info:
-                return {"status": "DETECTED", "corners": qr_corners}
+    def _pack_result(self, result: Dict[str, Any], out) -> int:
+        packed = self._packed
+        status_code = STATUS_CODES.get(result.get("status"), STATUS_CODES["ERROR"])
+        packed[PACKED_STATUS] = status_code
 
-            # --- This is the core state update ---
-            is_new_location = self.current_location is None or self.current_location.location_id != location_info.location_id
-            if is_new_location:
-                print(f"Python: Location updated to {location_info.location_name} ({location_info.location_id})")
-                self.current_location = location_info
+        corners = result.get("corners") or []
+        corner_count = min(len(corners), 4)
+        packed[PACKED_CORNER_COUNT] = corner_count
+        for i in range(4):
+            x, y = corners[i] if i < corner_count else (0, 0)
+            packed[PACKED_CORNERS + 2 * i] = x
+            packed[PACKED_CORNERS + 2 * i + 1] = y
 
-            # Always call the state machine to get the correct status to return
-            return self._update_navigation_status(qr_corners)
+        location_index = -1
+        if self.current_location is not None and status_code >= STATUS_CODES["LOCATION_CONFIRMED"]:
+            location_index = self._map_index(self.current_location.location_id)
+        packed[PACKED_LOCATION_INDEX] = location_index
+        packed[PACKED_FRAME_WIDTH] = self.detector.frame_width
+        packed[PACKED_FRAME_HEIGHT] = self.detector.frame_height
+        self.last_message = result.get("message")
 
+        # One slice assignment crosses into the Java array in a single call
+        out[0:PACKED_RESULT_SIZE] = packed
+        return status_code
+
+    def _map_index(self, location_id: Optional[str]) -> int:
+        if not location_id or self.navmap is None:
+            return -1
+        return self.navmap.index_of(location_id)
+
+    def _process_camera_planes(self, y_plane, u_plane, v_plane, width: int, height: int,
+                               y_row_stride: int, uv_row_stride: int, uv_pixel_stride: int,
+                               decimation: int = 1) -> Dict[str, Any]:
+        try:
+            if self.luma_only:
+                d = decimation
+                y = self._plane_view(y_plane, height // d, width // d, y_row_stride * d, d)
+                u = self._plane_view(u_plane, height // 2 // d, width // 2 // d,
+                                     uv_row_stride * d, uv_pixel_stride * d)
+                v = self._plane_view(v_plane, height // 2 // d, width // 2 // d,
+                                     uv_row_stride * d, uv_pixel_stride * d)
+                return self._process_luma_frame(y, u, v, d)
+
+            y = self._plane_view(y_plane, height, width, y_row_stride, 1)
+            u = self._plane_view(u_plane, height // 2, width // 2, uv_row_stride, uv_pixel_stride)
+            v = self._plane_view(v_plane, height // 2, width // 2, uv_row_stride, uv_pixel_stride)
+
+            # Pack into a reused NV21 buffer; the slice assignments are single vectorised copies.
+            if self._nv21_buffer is None or self._nv21_buffer.shape != (height + height // 2, width):
+                self._nv21_buffer = np.empty((height + height // 2, width), dtype=np.uint8)
+            self._nv21_buffer[:height] = y
+            vu = self._nv21_buffer[height:].reshape(height // 2, width // 2, 2)
+            vu[..., 0] = v
+            vu[..., 1] = u
+            bgr_frame = cv2.cvtColor(self._nv21_buffer, cv2.COLOR_YUV2BGR_NV21)
+            return self._process_bgr_frame(bgr_frame)
         except Exception as e:
-            print(f"PYTHON CRASH: An error occurred in process_camera_frame: {e}")
+            print(f"PYTHON CRASH: An error occurred in process_camera_planes: {e}")
             traceback.print_exc()
             return {"status": "ERROR", "message": f"An internal Python error occurred: {e}"}
 
+    @staticmethod
+    def _plane_view(plane, rows: int, cols: int, row_stride: int, pixel_stride: int) -> np.ndarray:
+        """Wrap a plane buffer as a (rows, cols) uint8 array without copying it."""
+        flat = np.frombuffer(memoryview(plane), dtype=np.uint8)
+        needed = (rows - 1) * row_stride + (cols - 1) * pixel_stride + 1
+        if flat.size < needed:
+            raise ValueError(f"Plane buffer too small. Expected at least {needed}, got {flat.size}.")
+        return np.lib.stride_tricks.as_strided(flat, shape=(rows, cols), strides=(row_stride, pixel_stride),
+                                               writeable=False)
+
+    def _process_luma_frame(self, y: np.ndarray, u: np.ndarray, v: np.ndarray,
+                            decimation: int = 1) -> Dict[str, Any]:
+        """
+        Luma-first path. The camera is asked for the detector's working size, so
+        the Y plane is used as it arrives and the detector adopts whatever size
+        was actually granted instead of the frame being resized to fit.
+        """
+        frame_height, frame_width = y.shape[:2]
+        self.detector.set_frame_size(frame_width, frame_height)
+        # A decimated view steps over pixels; gather it once rather than in every OpenCV call
+        gray_frame = y if decimation == 1 else np.ascontiguousarray(y)
+        chroma = ChromaPlanes(u=u, v=v,
+                              scale_x=u.shape[1] / frame_width,
+                              scale_y=u.shape[0] / frame_height)
+        return self._process_detection_frame(gray_frame, chroma)
+
+    def _process_bgr_frame(self, bgr_frame: np.ndarray) -> Dict[str, Any]:
+        self.detector.set_frame_size(bgr_frame.shape[1], bgr_frame.shape[0])
+        return self._process_detection_frame(bgr_frame)
+
+    def _process_detection_frame(self, frame: np.ndarray,
+                                 chroma: Optional[ChromaPlanes] = None) -> Dict[str, Any]:
+        self.decoder.set_frame_scale(self.detector.frame_width / self.detector.base_frame_width)
+        targets = self.detector.detect_qr_codes(frame, chroma)
+        nearest_qr = self.detector.get_nearest_qr(targets)
+        if not nearest_qr:
+            return {"status": "SCANNING"}
+
+        qr_corners = nearest_qr.corners
+        location_info = self.decoder.read_qr_code(nearest_qr, frame)
+        if not location_info:
+            if nearest_qr.data is None:
+                # Only the locator saw it and nothing decoded, so it may not be a code at all
+                return {"status": "SCANNING"}
+            return {"status": "DETECTED", "corners": qr_corners}
+
+        # --- This is the core state update ---
+        is_new_location = self.current_location is None or self.current_location.location_id != location_info.location_id
+        if is_new_location:
+            print(f"Python: Location updated to {location_info.location_name} ({location_info.location_id})")
+            self.current_location = location_info
+
+        # Always call the state machine to get the correct status to return
+        return self._update_navigation_status(qr_corners)
+
     def _update_navigation_status(self, corners: List) -> Dict[str, Any]:
         """
         Private helper to determine the navigation state after a location has been confirmed.
@@ -141,6 +313,7 @@ class NavigationProcessor:
                             )
                             result = {
                                 "status": "NAVIGATING",
+                                "next_waypoint_id": next_waypoint_id,
                                 "next_waypoint_name": next_waypoint_info['location_name'],
                                 "target_azimuth": target_azimuth,
                                 "target_distance": distance_meters,
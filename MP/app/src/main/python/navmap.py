@@ -0,0 +1,302 @@
+"""
+Compiled Navigation Map
+=======================
+
+Build-time compiler and memory-mapped reader for the binary map asset.
+
+The asset is produced from BuildingMap and the RouteGuidance corridor graph:
+
+    python navmap.py [output_path]
+
+and is read, without parsing, by both this module (NavMap) and the Java side
+(com.example.mp.NavMap). All values are little-endian.
+
+Layout (format version 1):
+    header   48 bytes, see HEADER_FORMAT
+    nodes    node_count records of NODE_FORMAT (40 bytes), sorted by location_id
+    row_ptr  uint32[node_count + 1]   CSR row offsets
+    col_idx  uint32[edge_count]       CSR neighbour indices
+    weights  float64[edge_count]      CSR edge lengths
+    strings  UTF-8 blob referenced by (offset, length) pairs in the node records
+
+Location IDs are interned as node indices. Because records are sorted by ID,
+index order equals ID order, so a binary search resolves an ID and ties in
+path search break the same way as comparing ID strings.
+"""
+
+import mmap
+import os
+import struct
+import zlib
+from collections.abc import Mapping
+from typing import Any, Callable, Dict, Iterator, List, Optional, Tuple
+
+MAGIC = b"NMAP"
+FORMAT_VERSION = 1
+
+# magic, version, header_size, checksum, node_count, edge_count,
+# off_nodes, off_row_ptr, off_col_idx, off_weights, off_strings, strings_size, reserved
+HEADER_FORMAT = "<4sHHIIIIIIIIII"
+HEADER_SIZE = struct.calcsize(HEADER_FORMAT)
+
+# id_off, name_off, access_off, id_len, name_len, access_len, flags, reserved,
+# qr_orientation, x, y
+NODE_FORMAT = "<IIIHHHBBfdd"
+NODE_SIZE = struct.calcsize(NODE_FORMAT)
+
+FLAG_ACCESSIBLE = 0x01
+FLAG_WHEELCHAIR = 0x02
+FLAG_RESTROOM = 0x04
+FLAG_STAIR = 0x08
+
+DEFAULT_ASSET_PATH = os.path.join(os.path.dirname(os.path.abspath(__file__)),
+                                  "..", "assets", "navmap", "block_n.navmap")
+
+
+def _accessibility_flags(location_id: str, info: str) -> int:
+    text = info.lower()
+    flags = 0
+    if "not accessible" not in text:
+        flags |= FLAG_ACCESSIBLE
+    if "wheelchair" in text:
+        flags |= FLAG_WHEELCHAIR
+    if "restroom" in text:
+        flags |= FLAG_RESTROOM
+    if "STAIR" in location_id:
+        flags |= FLAG_STAIR
+    return flags
+
+
+def _align(value: int, alignment: int) -> int:
+    return (value + alignment - 1) // alignment * alignment
+
+
+def compile_map() -> bytes:
+    """
+    Compile BuildingMap and the RouteGuidance corridor graph into the binary format.
+    """
+    # Imported here so that reading a compiled map never loads the legacy sources
+    from route_guidance import RouteGuidance
+
+    guidance = RouteGuidance()
+    building_map = guidance.building_map
+    all_locations = building_map.bottom_rooms + building_map.top_rooms + building_map.special_areas
+    locations = {loc['location_id']: loc for loc in all_locations if loc['location_id'] in building_map.nodes}
+
+    ids = sorted(locations)
+    index = {loc_id: i for i, loc_id in enumerate(ids)}
+
+    strings = bytearray()
+    string_refs: Dict[str, Tuple[int, int]] = {}
+
+    def intern(text: str) -> Tuple[int, int]:
+        if text not in string_refs:
+            encoded = text.encode("utf-8")
+            string_refs[text] = (len(strings), len(encoded))
+            strings.extend(encoded)
+        return string_refs[text]
+
+    node_blob = bytearray()
+    for loc_id in ids:
+        loc = locations[loc_id]
+        access_info = loc.get('accessibility_info', "Accessible")
+        id_off, id_len = intern(loc_id)
+        name_off, name_len = intern(loc['name'])
+        access_off, access_len = intern(access_info)
+        x, y = building_map.nodes[loc_id]
+        node_blob += struct.pack(NODE_FORMAT, id_off, name_off, access_off, id_len, name_len, access_len,
+                                 _accessibility_flags(loc_id, access_info), 0,
+                                 float(loc.get('qr_orientation', 0.0)), float(x), float(y))
+
+    row_ptr = [0]
+    col_idx: List[int] = []
+    weights: List[float] = []
+    for loc_id in ids:
+        for neighbor, weight in guidance.graph.get(loc_id, []):
+            if neighbor in index:
+                col_idx.append(index[neighbor])
+                weights.append(weight)
+        row_ptr.append(len(col_idx))
+
+    off_nodes = _align(HEADER_SIZE, 8)
+    off_row_ptr = off_nodes + len(node_blob)
+    off_col_idx = off_row_ptr + 4 * len(row_ptr)
+    off_weights = _align(off_col_idx + 4 * len(col_idx), 8)
+    off_strings = off_weights + 8 * len(weights)
+
+    body = bytearray(off_strings + len(strings) - HEADER_SIZE)
+
+    def put(offset: int, data: bytes):
+        body[offset - HEADER_SIZE:offset - HEADER_SIZE + len(data)] = data
+
+    put(off_nodes, node_blob)
+    put(off_row_ptr, struct.pack(f"<{len(row_ptr)}I", *row_ptr))
+    put(off_col_idx, struct.pack(f"<{len(col_idx)}I", *col_idx))
+    put(off_weights, struct.pack(f"<{len(weights)}d", *weights))
+    put(off_strings, bytes(strings))
+
+    checksum = zlib.crc32(bytes(body)) & 0xFFFFFFFF
+    header = struct.pack(HEADER_FORMAT, MAGIC, FORMAT_VERSION, HEADER_SIZE, checksum,
+                         len(ids), len(col_idx), off_nodes, off_row_ptr, off_col_idx,
+                         off_weights, off_strings, len(strings), 0)
+    return header + bytes(body)
+
+
+def write_map(output_path: str = DEFAULT_ASSET_PATH) -> str:
+    data = compile_map()
+    os.makedirs(os.path.dirname(os.path.abspath(output_path)), exist_ok=True)
+    with open(output_path, "wb") as f:
+        f.write(data)
+    return output_path
+
+
+class NavMap:
+    """
+    Read-only view over a compiled map. The file is memory-mapped and the
+    node, CSR and string sections are numpy views into it, so opening the map
+    costs the same regardless of how many locations it holds.
+    """
+
+    def __init__(self, path: str):
+        import numpy as np
+
+        with open(path, "rb") as f:
+            self._mm = mmap.mmap(f.fileno(), 0, access=mmap.ACCESS_READ)
+        (magic, version, header_size, self.checksum, self.node_count, self.edge_count,
+         off_nodes, off_row_ptr, off_col_idx, off_weights, off_strings,
+         strings_size, _) = struct.unpack_from(HEADER_FORMAT, self._mm, 0)
+        if magic != MAGIC or version != FORMAT_VERSION:
+            raise ValueError(f"Unsupported map asset {path}: magic={magic!r} version={version}")
+
+        node_dtype = np.dtype([
+            ("id_off", "<u4"), ("name_off", "<u4"), ("access_off", "<u4"),
+            ("id_len", "<u2"), ("name_len", "<u2"), ("access_len", "<u2"),
+            ("flags", "u1"), ("reserved", "u1"),
+            ("qr_orientation", "<f4"), ("x", "<f8"), ("y", "<f8"),
+        ])
+        self.nodes = np.frombuffer(self._mm, dtype=node_dtype, count=self.node_count, offset=off_nodes)
+        self.row_ptr = np.frombuffer(self._mm, dtype="<u4", count=self.node_count + 1, offset=off_row_ptr)
+        self.col_idx = np.frombuffer(self._mm, dtype="<u4", count=self.edge_count, offset=off_col_idx)
+        self.weights = np.frombuffer(self._mm, dtype="<f8", count=self.edge_count, offset=off_weights)
+        self._strings = memoryview(self._mm)[off_strings:off_strings + strings_size]
+
+    @classmethod
+    def open_default(cls) -> Optional["NavMap"]:
+        """Open the asset next to the sources, if it has been compiled."""
+        if os.path.exists(DEFAULT_ASSET_PATH):
+            return cls(DEFAULT_ASSET_PATH)
+        return None
+
+    def _string(self, offset: int, length: int) -> str:
+        return bytes(self._strings[offset:offset + length]).decode("utf-8")
+
+    def location_id(self, index: int) -> str:
+        node = self.nodes[index]
+        return self._string(int(node["id_off"]), int(node["id_len"]))
+
+    def location_name(self, index: int) -> str:
+        node = self.nodes[index]
+        return self._string(int(node["name_off"]), int(node["name_len"]))
+
+    def accessibility_info(self, index: int) -> str:
+        node = self.nodes[index]
+        return self._string(int(node["access_off"]), int(node["access_len"]))
+
+    def flags(self, index: int) -> int:
+        return int(self.nodes[index]["flags"])
+
+    def coordinates(self, index: int) -> Tuple[float, float]:
+        node = self.nodes[index]
+        return float(node["x"]), float(node["y"])
+
+    def qr_orientation(self, index: int) -> float:
+        return float(self.nodes[index]["qr_orientation"])
+
+    def index_of(self, location_id: str) -> int:
+        """Binary search over the sorted IDs; returns -1 if the ID is unknown."""
+        target = location_id.encode("utf-8")
+        lo, hi = 0, self.node_count - 1
+        while lo <= hi:
+            mid = (lo + hi) // 2
+            node = self.nodes[mid]
+            off = int(node["id_off"])
+            probe = bytes(self._strings[off:off + int(node["id_len"])])
+            if probe == target:
+                return mid
+            if probe < target:
+                lo = mid + 1
+            else:
+                hi = mid - 1
+        return -1
+
+    def neighbors(self, index: int) -> Iterator[Tuple[int, float]]:
+        start, end = int(self.row_ptr[index]), int(self.row_ptr[index + 1])
+        for e in range(start, end):
+            yield int(self.col_idx[e]), float(self.weights[e])
+
+    def iter_locations(self) -> Iterator[Dict[str, Any]]:
+        """Location records in the same shape as the BuildingMap room dictionaries."""
+        for i in range(self.node_count):
+            yield {
+                'location_id': self.location_id(i),
+                'name': self.location_name(i),
+                'coordinates': self.coordinates(i),
+                'qr_orientation': self.qr_orientation(i),
+                'accessibility_info': self.accessibility_info(i),
+            }
+
+    def location_map(self, build: Callable[[int], Any]) -> "LocationMap":
+        """Mapping from location ID to build(index), evaluated per ID on first access."""
+        return LocationMap(self, build)
+
+    def node_coordinates(self) -> "LocationMap":
+        """Equivalent of BuildingMap.nodes, looked up lazily."""
+        return self.location_map(self.coordinates)
+
+    def adjacency(self) -> "LocationMap":
+        """Equivalent of RouteGuidance.graph, looked up lazily."""
+        return self.location_map(lambda i: [(self.location_id(j), w) for j, w in self.neighbors(i)])
+
+
+class LocationMap(Mapping):
+    """
+    Read-only dict-like view keyed by location ID. A key is resolved with
+    NavMap.index_of and its value built and cached on first access, so code
+    written against the old dictionaries keeps working without the whole map
+    being walked at startup. Iterating still visits every location.
+    """
+
+    def __init__(self, navmap: NavMap, build: Callable[[int], Any]):
+        self._navmap = navmap
+        self._build = build
+        self._cache: Dict[str, Any] = {}
+
+    def __getitem__(self, location_id: str) -> Any:
+        try:
+            return self._cache[location_id]
+        except KeyError:
+            pass
+        index = self._navmap.index_of(location_id) if isinstance(location_id, str) else -1
+        if index < 0:
+            raise KeyError(location_id)
+        value = self._cache[location_id] = self._build(index)
+        return value
+
+    def __contains__(self, location_id: object) -> bool:
+        if location_id in self._cache:
+            return True
+        return isinstance(location_id, str) and self._navmap.index_of(location_id) >= 0
+
+    def __iter__(self) -> Iterator[str]:
+        for i in range(self._navmap.node_count):
+            yield self._navmap.location_id(i)
+
+    def __len__(self) -> int:
+        return self._navmap.node_count
+
+
+if __name__ == "__main__":
+    import sys
+    target = sys.argv[1] if len(sys.argv) > 1 else DEFAULT_ASSET_PATH
+    written = write_map(target)
+    print(f"Compiled map written to {os.path.normpath(written)} ({os.path.getsize(written)} bytes)")
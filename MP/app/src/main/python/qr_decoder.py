@@ -12,11 +12,13 @@ Module B: QR Code Reader and Direction Processor
 
 import cv2
 import numpy as np
-from pyzbar.pyzbar import decode, ZBarSymbol
+from zbar_scanner import ZbarScanner
 import json
-from typing import Tuple, Optional, List, Dict, Any
+import time
+from typing import Tuple, Optional, List, Dict, Any, Iterator, Callable, Mapping
 from dataclasses import dataclass, asdict
 from map_building import BuildingMap
+from navmap import NavMap
 import traceback  # <--- THIS IS THE FIX
 
 @dataclass
@@ -33,6 +35,7 @@ class QRTarget:
     angle_from_center: float
     color: str
     corners: List[Tuple[int, int]]
+    data: Optional[str] = None
 
 @dataclass
 class LocationInfo:
@@ -62,23 +65,147 @@ class LocationInfo:
         """
         self.available_directions.update(directions)
 
+# Rectified crops: pixels per QR module, and the quiet zone kept around the code
+RECTIFIED_MODULE_PX = 4
+QUIET_ZONE_MODULES = 4
+# Below this grey-level variance the crop is too flat for any threshold to help
+MIN_CROP_VARIANCE = 100.0
+# Otsu separability (between-class over total variance) above which one global threshold fits
+BIMODAL_SEPARABILITY = 0.75
+
+def _histogram_threshold(gray: np.ndarray, cache: Dict[str, np.ndarray]) -> np.ndarray:
+    """
+    Pick the binarisation from the crop's histogram: a clearly two-peaked
+    histogram gets Otsu's global threshold, one smeared by uneven light gets a
+    local threshold a few modules wide, and a flat one is left as it is.
+    """
+    p = np.bincount(gray.ravel(), minlength=256) / gray.size
+    levels = np.arange(256)
+    mean = (p * levels).sum()
+    variance = (p * (levels - mean) ** 2).sum()
+    if variance < MIN_CROP_VARIANCE:
+        return gray
+
+    threshold, binary = cv2.threshold(gray, 0, 255, cv2.THRESH_BINARY + cv2.THRESH_OTSU)
+    cache["otsu"] = binary
+    below = levels <= threshold
+    w0 = p[below].sum()
+    w1 = 1.0 - w0
+    if w0 <= 0 or w1 <= 0:
+        return gray
+    mu0 = (p[below] * levels[below]).sum() / w0
+    mu1 = (p[~below] * levels[~below]).sum() / w1
+    separability = w0 * w1 * (mu0 - mu1) ** 2 / variance
+    if separability >= BIMODAL_SEPARABILITY:
+        return binary
+    return cv2.adaptiveThreshold(gray, 255, cv2.ADAPTIVE_THRESH_MEAN_C, cv2.THRESH_BINARY,
+                                 4 * RECTIFIED_MODULE_PX + 1, 5)
+
+def _otsu(gray: np.ndarray, cache: Dict[str, np.ndarray]) -> np.ndarray:
+    if "otsu" not in cache:
+        _, cache["otsu"] = cv2.threshold(gray, 0, 255, cv2.THRESH_BINARY + cv2.THRESH_OTSU)
+    return cache["otsu"]
+
+def _enlarge(gray: np.ndarray, cache: Dict[str, np.ndarray]) -> Optional[np.ndarray]:
+    if gray.shape[0] >= 100 and gray.shape[1] >= 100:
+        return None
+    return cv2.resize(gray, None, fx=2.0, fy=2.0, interpolation=cv2.INTER_CUBIC)
+
+# Enhancement ladder in its default order. Each step maps the grayscale crop to a
+# variant to decode, or to None when it does not apply; `cache` shares
+# intermediates between steps of the same crop.
+ENHANCEMENT_STEPS: List[Tuple[str, Callable[[np.ndarray, Dict[str, np.ndarray]], Optional[np.ndarray]]]] = [
+    ("histogram", _histogram_threshold),
+    ("gray", lambda gray, cache: gray),
+    ("blur", lambda gray, cache: cv2.GaussianBlur(gray, (3, 3), 0)),
+    ("equalize", lambda gray, cache: cv2.equalizeHist(gray)),
+    ("clahe", lambda gray, cache: cv2.createCLAHE(clipLimit=3.0, tileGridSize=(8, 8)).apply(gray)),
+    ("otsu", _otsu),
+    ("adaptive", lambda gray, cache: cv2.adaptiveThreshold(gray, 255, cv2.ADAPTIVE_THRESH_GAUSSIAN_C,
+                                                           cv2.THRESH_BINARY, 11, 2)),
+    ("close", lambda gray, cache: cv2.morphologyEx(_otsu(gray, cache), cv2.MORPH_CLOSE,
+                                                   np.ones((2, 2), np.uint8))),
+    ("enlarge", _enlarge),
+]
+
+@dataclass
+class EnhancementStats:
+    """
+    Running record of one enhancement step: how often its variant decoded and
+    what building and decoding it cost.
+    """
+    attempts: int = 0
+    hits: int = 0
+    total_ms: float = 0.0
+
+    def record(self, hit: bool, elapsed_ms: float):
+        self.attempts += 1
+        self.hits += int(hit)
+        self.total_ms += elapsed_ms
+
+    def score(self, prior_ms: float) -> float:
+        """
+        Expected decodes per millisecond. Smoothed so an untried step starts at an
+        even chance and the typical step cost, and one bad frame does not bury a step.
+        """
+        hit_rate = (self.hits + 1) / (self.attempts + 2)
+        mean_ms = self.total_ms / self.attempts if self.attempts else prior_ms
+        return hit_rate / max(mean_ms, 0.05)
+
 class QRDecoder:
     """
     QR Code Reader and Direction Processor
     """
     
-    def __init__(self):
+    def __init__(self, navmap: Optional[NavMap] = None):
         """
-        Initialize QR decoder with location database from BuildingMap.
+        Initialize QR decoder with location database from the compiled map,
+        or from BuildingMap when no compiled map is given.
         """
         self.current_location: Optional[LocationInfo] = None
         self.last_scanned_qr: Optional[str] = None
-        self.location_database: Dict[str, LocationInfo] = {}
-        self.min_qr_size = 50
+        self.location_database: Mapping[str, LocationInfo] = {}
+        # Smallest code worth reading, in pixels of a base-size (640 px wide) frame;
+        # min_qr_size follows the working frame size through set_frame_scale
+        self.base_min_qr_size = 50
+        self.min_qr_size = self.base_min_qr_size
         self.max_read_attempts = 5
         self.confidence_threshold = 0.8
-        self.building_map = BuildingMap()
-        self._initialize_block_n_database()
+        # Modules per side of the codes qr_generator.py prints (version 2 for "id|orientation|color")
+        self.qr_modules = 25
+        # Enhancement steps are tried best score first and reordered after every read
+        self.enhancement_stats: Dict[str, EnhancementStats] = {name: EnhancementStats() for name, _ in ENHANCEMENT_STEPS}
+        self._ladder = list(ENHANCEMENT_STEPS)
+        # Crops are small, so every line is scanned
+        self.scanner = ZbarScanner()
+        if navmap is not None:
+            self._initialize_from_navmap(navmap)
+        else:
+            self.building_map = BuildingMap()
+            self._initialize_block_n_database()
+
+    def _initialize_from_navmap(self, navmap: NavMap):
+        """
+        Initialize location database from a compiled map.
+        """
+        def location_info(index: int) -> LocationInfo:
+            name = navmap.location_name(index)
+            return LocationInfo(
+                location_id=navmap.location_id(index),
+                location_name=name,
+                floor="Ground",
+                building="Block N",
+                coordinates=navmap.coordinates(index),
+                available_directions={},
+                connections=[],
+                qr_orientation=navmap.qr_orientation(index),
+                description=f"{name} in Block N",
+                accessibility_info=navmap.accessibility_info(index)
+            )
+
+        # Each location is read from the map the first time its QR code is decoded
+        self.location_database = navmap.location_map(location_info)
+        print(f"Python QRDecoder: Database opened with {len(self.location_database)} locations from compiled map.")
 
     def _initialize_block_n_database(self):
         """
@@ -105,6 +232,13 @@ class QRDecoder:
                 print(f"Python QRDecoder WARNING: Location '{loc_id}' found in room list but NOT in nodes dictionary. It will be ignored.")
         print(f"Python QRDecoder: Database initialized with {len(self.location_database)} valid locations.")
 
+    def set_frame_scale(self, scale: float):
+        """
+        Scale the size limits to a working frame `scale` times the base width, so
+        a decimated or low-resolution frame does not reject codes for being small.
+        """
+        self.min_qr_size = self.base_min_qr_size * scale
+
     def decode_qr_content(self, qr_data: str) -> Optional[LocationInfo]:
         """
         Decode QR code content and return corresponding LocationInfo.
@@ -149,49 +283,80 @@ class QRDecoder:
             print(f"Error decoding QR content: {e}")
             return None
 
-    def enhance_qr_region(self, frame: np.ndarray, corners: List[Tuple[int, int]]) -> List[np.ndarray]:
+    def enhance_qr_region(self, frame: np.ndarray,
+                          corners: List[Tuple[int, int]]) -> Iterator[Tuple[str, np.ndarray]]:
         """
-        Extract and enhance QR code region for better decoding.
+        Extract the axis-aligned QR code region and lazily yield (step name,
+        enhanced image) pairs in ladder order.
         """
         try:
-            x_coords = [p[0] for p in corners]
-            y_coords = [p[1] for p in corners]
-            x_min = max(0, min(x_coords) - 20)
-            y_min = max(0, min(y_coords) - 20)
-            x_max = min(frame.shape[1], max(x_coords) + 20)
-            y_max = min(frame.shape[0], max(y_coords) + 20)
-            qr_region = frame[y_min:y_max, x_min:x_max]
-            if qr_region.size == 0:
-                return []
-            if len(qr_region.shape) == 3:
-                gray = cv2.cvtColor(qr_region, cv2.COLOR_BGR2GRAY)
-            else:
-                gray = qr_region.copy()
-            processed_images = []
-            processed_images.append(gray)
-            blurred = cv2.GaussianBlur(gray, (3, 3), 0)
-            processed_images.append(blurred)
-            equalized = cv2.equalizeHist(gray)
-            processed_images.append(equalized)
-            clahe = cv2.createCLAHE(clipLimit=3.0, tileGridSize=(8, 8))
-            clahe_applied = clahe.apply(gray)
-            processed_images.append(clahe_applied)
-            _, binary_otsu = cv2.threshold(gray, 0, 255, cv2.THRESH_BINARY + cv2.THRESH_OTSU)
-            processed_images.append(binary_otsu)
-            adaptive = cv2.adaptiveThreshold(gray, 255, cv2.ADAPTIVE_THRESH_GAUSSIAN_C, 
-                                            cv2.THRESH_BINARY, 11, 2)
-            processed_images.append(adaptive)
-            kernel = np.ones((2, 2), np.uint8)
-            cleaned = cv2.morphologyEx(binary_otsu, cv2.MORPH_CLOSE, kernel)
-            processed_images.append(cleaned)
-            if gray.shape[0] < 100 or gray.shape[1] < 100:
-                scale = 2.0
-                enlarged = cv2.resize(gray, None, fx=scale, fy=scale, interpolation=cv2.INTER_CUBIC)
-                processed_images.append(enlarged)
-            return processed_images
+            gray = self._crop_qr_region(frame, corners)
         except Exception as e:
             print(f"Error enhancing QR region: {e}")
-            return []
+            return
+        if gray is not None:
+            yield from self._enhanced_variants(gray)
+
+    def _enhanced_variants(self, gray: np.ndarray, skip: Tuple[str, ...] = ()) -> Iterator[Tuple[str, np.ndarray]]:
+        """
+        Lazily yield (step name, enhanced image) pairs of a grayscale image in
+        ladder order, leaving out the steps in `skip`. Each variant is built only
+        when the previous one failed to decode, so an image that reads as plain
+        grayscale costs one step.
+        """
+        cache: Dict[str, np.ndarray] = {}
+        for name, step in tuple(self._ladder):
+            if name in skip:
+                continue
+            try:
+                variant = step(gray, cache)
+            except Exception as e:
+                print(f"Error enhancing QR region ({name}): {e}")
+                continue
+            if variant is not None:
+                yield name, variant
+
+    def _rectify_qr_region(self, frame: np.ndarray, corners: List[Tuple[int, int]]) -> Optional[np.ndarray]:
+        """
+        Warp the corner quadrilateral onto an upright square of qr_modules modules
+        at RECTIFIED_MODULE_PX each, keeping the surrounding quiet zone, so skew
+        and distance no longer change what the decoder sees.
+        """
+        if len(corners) != 4:
+            return None
+        pts = np.array(corners, dtype=np.float32)
+        # Order the corners clockwise on screen so the warp never mirrors the code
+        centre = pts.mean(axis=0)
+        src = pts[np.argsort(np.arctan2(pts[:, 1] - centre[1], pts[:, 0] - centre[0]))]
+        if cv2.contourArea(src) < self.min_qr_size * self.min_qr_size / 4:
+            return None
+
+        quiet = QUIET_ZONE_MODULES * RECTIFIED_MODULE_PX
+        side = self.qr_modules * RECTIFIED_MODULE_PX
+        dst = np.array([[quiet, quiet], [quiet + side, quiet],
+                        [quiet + side, quiet + side], [quiet, quiet + side]], dtype=np.float32)
+        size = side + 2 * quiet
+        warped = cv2.warpPerspective(frame, cv2.getPerspectiveTransform(src, dst), (size, size),
+                                     flags=cv2.INTER_LINEAR, borderMode=cv2.BORDER_REPLICATE)
+        if len(warped.shape) == 3:
+            warped = cv2.cvtColor(warped, cv2.COLOR_BGR2GRAY)
+        return warped
+
+    @staticmethod
+    def _crop_qr_region(frame: np.ndarray, corners: List[Tuple[int, int]]) -> Optional[np.ndarray]:
+        """Axis-aligned box around the corners with a 20 px margin, in grayscale."""
+        x_coords = [p[0] for p in corners]
+        y_coords = [p[1] for p in corners]
+        x_min = max(0, min(x_coords) - 20)
+        y_min = max(0, min(y_coords) - 20)
+        x_max = min(frame.shape[1], max(x_coords) + 20)
+        y_max = min(frame.shape[0], max(y_coords) + 20)
+        qr_region = frame[y_min:y_max, x_min:x_max]
+        if qr_region.size == 0:
+            return None
+        if len(qr_region.shape) == 3:
+            return cv2.cvtColor(qr_region, cv2.COLOR_BGR2GRAY)
+        return qr_region.copy()
 
     def read_qr_code(self, qr_target: QRTarget, frame: np.ndarray) -> Optional[LocationInfo]:
         """
@@ -201,31 +366,42 @@ class QRDecoder:
             if qr_target.width < self.min_qr_size or qr_target.height < self.min_qr_size:
                 return None
 
-            processed_images = self.enhance_qr_region(frame, qr_target.corners)
-            if not processed_images:
-                return None
+            # Fast path: detection already read the payload, no need to crop and decode again
+            if qr_target.data:
+                return self._match_qr_data(qr_target.data, "detection")
 
-            for i, processed_image in enumerate(processed_images):
-                try:
-                    decoded_objects = decode(processed_image, symbols=[ZBarSymbol.QRCODE])
+            # A located but unread code: first one decode of the upright, thresholded
+            # square; when that fails, the rest of the ladder runs on the same square
+            rectified = self._rectify_qr_region(frame, qr_target.corners)
+            try:
+                if rectified is not None:
+                    start = time.perf_counter()
+                    decoded_objects = self.scanner.scan(_histogram_threshold(rectified, {}))
+                    self.enhancement_stats["histogram"].record(bool(decoded_objects),
+                                                               (time.perf_counter() - start) * 1000.0)
                     if decoded_objects:
-                        qr_data = decoded_objects[0].data.decode('utf-8')
-                        print(f"QR data successfully read (attempt {i+1}): '{qr_data}'")
+                        return self._match_qr_data(decoded_objects[0].data.decode('utf-8'), "rectified")
+                    variants = self._enhanced_variants(rectified, skip=("histogram",))
+                else:
+                    # Without four corners the ladder works on a plain crop
+                    variants = self.enhance_qr_region(frame, qr_target.corners)
 
-                        location_info = self.decode_qr_content(qr_data)
-
-                        if location_info:
-                            self.current_location = location_info
-                            self.last_scanned_qr = qr_data
-                            print(f"Successfully matched QR data to location: {location_info.location_name}")
-                            return location_info
-                        else:
-                            print(f"QR data '{qr_data}' was read but did not match any location in the database.")
-                            return None
-
-                except Exception as decode_error:
-                    print(f"An error occurred during decoding attempt {i+1}: {decode_error}")
-                    continue
+                # Each step is timed from building its variant to the end of its decode
+                start = time.perf_counter()
+                for name, processed_image in variants:
+                    try:
+                        decoded_objects = self.scanner.scan(processed_image)
+                    except Exception as decode_error:
+                        print(f"An error occurred during decoding attempt ({name}): {decode_error}")
+                        decoded_objects = []
+                    now = time.perf_counter()
+                    self.enhancement_stats[name].record(bool(decoded_objects), (now - start) * 1000.0)
+                    start = now
+                    if decoded_objects:
+                        qr_data = decoded_objects[0].data.decode('utf-8')
+                        return self._match_qr_data(qr_data, f"{name} enhancement")
+            finally:
+                self._reorder_ladder()
 
             print("Failed to read any QR data from the image after all attempts.")
             return None
@@ -234,7 +410,29 @@ class QRDecoder:
             print(f"A critical error occurred in read_qr_code: {e}")
             traceback.print_exc()
             return None
+
+    def _reorder_ladder(self):
+        """Sort the steps by score, keeping the default order between equals."""
+        stats = self.enhancement_stats
+        attempts = sum(s.attempts for s in stats.values())
+        prior_ms = sum(s.total_ms for s in stats.values()) / attempts if attempts else 1.0
+        default_order = {name: i for i, (name, _) in enumerate(ENHANCEMENT_STEPS)}
+        self._ladder.sort(key=lambda entry: (-stats[entry[0]].score(prior_ms), default_order[entry[0]]))
         
+    def _match_qr_data(self, qr_data: str, source: str) -> Optional[LocationInfo]:
+        """
+        Match a decoded QR payload to a location and remember it as the current one.
+        """
+        print(f"QR data successfully read ({source}): '{qr_data}'")
+        location_info = self.decode_qr_content(qr_data)
+        if location_info:
+            self.current_location = location_info
+            self.last_scanned_qr = qr_data
+            print(f"Successfully matched QR data to location: {location_info.location_name}")
+            return location_info
+        print(f"QR data '{qr_data}' was read but did not match any location in the database.")
+        return None
+
     def get_available_directions(self) -> List[str]:
         """
         Get list of available directions from current location.
@@ -7,7 +7,7 @@ For Android deployment using Pydroid3 or Kivy
 #!/usr/bin/env python3
 import cv2
 import numpy as np
-from pyzbar.pyzbar import decode, ZBarSymbol
+from zbar_scanner import ZbarScanner
 from typing import Tuple, Optional, List
 import math
 from dataclasses import dataclass
@@ -32,6 +32,15 @@ class QRTarget:
     angle_from_center: float  # Angle from screen center
     color: str
     corners: List[Tuple[int, int]]
+    data: Optional[str] = None  # Payload zbar already read during detection
+
+@dataclass
+class ChromaPlanes:
+    """Subsampled U/V planes of a YUV frame, plus the scale from detection to plane coordinates"""
+    u: np.ndarray
+    v: np.ndarray
+    scale_x: float
+    scale_y: float
     
 class QRDetectionModule:
     """
@@ -47,16 +56,52 @@ class QRDetectionModule:
             target_color: Color of QR codes to detect (RED, GREEN, BLUE, or ANY)
         """
         self.target_color = target_color
-        self.frame_width = 640
-        self.frame_height = 480
+        self.base_frame_width = 640
+        self.base_frame_height = 480
+        self.frame_width = self.base_frame_width
+        self.frame_height = self.base_frame_height
         self.center_x = self.frame_width // 2
         self.center_y = self.frame_height // 2
         
         # QR code reference size for distance estimation
         # Assume standard QR code is 10cm and appears as 200px at 30cm distance
-        self.reference_size = 200  # pixels
+        self.base_reference_size = 200  # pixels, at base_frame_width
+        self.reference_size = self.base_reference_size
         self.reference_distance = 30  # cm
         
+        # Tracking mode: after a detection, only scan a window around the last
+        # corners, with a full-frame rescan every rescan_interval frames or on loss
+        self.tracking_enabled = True
+        self.rescan_interval = 10
+        self.track_margin = 0.5   # Window grows by this fraction of the code size on each side
+        # Smallest window side, in pixels of a base-size frame; zbar needs some
+        # quiet zone around the code. min_track_size follows the working frame size.
+        self.base_min_track_size = 96
+        self.min_track_size = self.base_min_track_size
+        self._track_window: Optional[Tuple[int, int, int, int]] = None
+        self._frames_since_full_scan = 0
+        
+        # Persistent QR-only scanners: full-frame searches look at every
+        # search_density-th line, tracked windows at every line
+        self.search_density = 2
+        self.search_scanner = ZbarScanner(self.search_density, self.search_density)
+        self.window_scanner = ZbarScanner()
+        
+        # When a full-frame scan reads nothing, OpenCV's finder-pattern locator
+        # still reports where a code is, so the decoder can rectify and read it.
+        # It costs more than a zbar pass, so it runs only on the first
+        # locate_after_loss empty scans after a code was in view, and then on
+        # every locate_interval-th one. Quads smaller than min_locate_size
+        # (scaled like the frame) or too lopsided to be a code are ignored.
+        self.locate_unread_codes = True
+        self.locate_after_loss = 3
+        self.locate_interval = 10
+        self.max_locate_side_ratio = 3.0
+        self.base_min_locate_size = 40
+        self.min_locate_size = self.base_min_locate_size
+        self._locator = cv2.QRCodeDetector()
+        self._empty_full_scans = self.locate_after_loss
+        
         # Color ranges in HSV for detection
         self.color_ranges = {
             QRColor.RED: [
@@ -103,26 +148,111 @@ class QRDetectionModule:
         
         return mask
     
-    def detect_qr_codes(self, frame: np.ndarray) -> List[QRTarget]:
+    def detect_qr_codes(self, frame: np.ndarray, chroma: Optional[ChromaPlanes] = None) -> List[QRTarget]:
         """
         Detect QR codes in the frame
         
+        While a code is being tracked only the window around its last position
+        is scanned; the whole frame is scanned every rescan_interval frames and
+        on the same frame the code is lost from the window.
+        
         Args:
-            frame: Input camera frame
+            frame: Input camera frame, either BGR or a single luma (Y) plane
+            chroma: U/V planes for a luma frame; only sampled inside detected codes
             
         Returns:
-            List of detected QR targets
+            List of detected QR targets, in full-frame coordinates
+        """
+        frame_h, frame_w = frame.shape[:2]
+        if (self.tracking_enabled and self._track_window is not None
+                and self._frames_since_full_scan < self.rescan_interval):
+            self._frames_since_full_scan += 1
+            targets = self._detect_in_window(frame, chroma, self._track_window, self.window_scanner, False)
+            if targets:
+                self._update_track_window(targets, frame_w, frame_h)
+                return targets
+        
+        self._frames_since_full_scan = 0
+        targets = self._detect_in_window(frame, chroma, (0, 0, frame_w, frame_h), self.search_scanner,
+                                         self.locate_unread_codes and self._locator_due())
+        # Only codes zbar read are worth a tracked window; the window scan cannot locate
+        read = [t for t in targets if t.data is not None]
+        if read:
+            self._empty_full_scans = 0
+            if self.tracking_enabled:
+                self._update_track_window(read, frame_w, frame_h)
+        else:
+            self._empty_full_scans += 1
+            self._track_window = None
+        return targets
+    
+    def _locator_due(self) -> bool:
+        """Whether this full scan may fall back to the locator if zbar reads nothing"""
+        n = self._empty_full_scans
+        return n < self.locate_after_loss or (n - self.locate_after_loss + 1) % self.locate_interval == 0
+    
+    def set_frame_size(self, width: int, height: int):
+        """
+        Change the working frame size. The centre, the distance reference and
+        the size limits follow it, so estimates stay the same at any working resolution.
+        """
+        if width == self.frame_width and height == self.frame_height:
+            return
+        self.frame_width = width
+        self.frame_height = height
+        self.center_x = width // 2
+        self.center_y = height // 2
+        self.reference_size = self.base_reference_size * width / self.base_frame_width
+        self.min_locate_size = self.base_min_locate_size * width / self.base_frame_width
+        self.min_track_size = self.base_min_track_size * width / self.base_frame_width
+        # The tracked window is in the old coordinates
+        self.reset_tracking()
+    
+    def reset_tracking(self):
+        """Forget the tracked window so the next frame is scanned in full"""
+        self._track_window = None
+        self._frames_since_full_scan = 0
+    
+    def _update_track_window(self, targets: List[QRTarget], frame_w: int, frame_h: int):
+        xs = [x for t in targets for x, _ in t.corners]
+        ys = [y for t in targets for _, y in t.corners]
+        x0, x1, y0, y1 = min(xs), max(xs), min(ys), max(ys)
+        margin_x = max((x1 - x0) * self.track_margin, (self.min_track_size - (x1 - x0)) / 2)
+        margin_y = max((y1 - y0) * self.track_margin, (self.min_track_size - (y1 - y0)) / 2)
+        self._track_window = (max(0, int(x0 - margin_x)), max(0, int(y0 - margin_y)),
+                              min(frame_w, int(math.ceil(x1 + margin_x))),
+                              min(frame_h, int(math.ceil(y1 + margin_y))))
+    
+    def _detect_in_window(self, frame: np.ndarray, chroma: Optional[ChromaPlanes],
+                          window: Tuple[int, int, int, int], scanner: ZbarScanner,
+                          locate_unread: bool) -> List[QRTarget]:
+        """
+        Run the detection ladder on frame[y0:y1, x0:x1] and report codes in frame coordinates.
+        With locate_unread, a code zbar could not read is still reported, without data.
         """
         detected_qrs = []
-        
-        # Get color mask
-        color_mask = self.detect_colored_regions(frame, self.target_color)
-        
-        # Apply color mask to frame
-        masked_frame = cv2.bitwise_and(frame, frame, mask=color_mask)
-        
-        # Convert to grayscale for QR detection
-        gray = cv2.cvtColor(masked_frame, cv2.COLOR_BGR2GRAY)
+        luma_only = frame.ndim == 2
+        wx0, wy0, wx1, wy1 = window
+        
+        region = frame[wy0:wy1, wx0:wx1]
+        if region.size == 0:
+            return detected_qrs
+        
+        if luma_only:
+            # Detection and zbar only need luma; colour is resolved per code below
+            gray = region
+        elif self.target_color == QRColor.ANY:
+            # An all-255 mask would leave the frame unchanged, so skip it
+            gray = cv2.cvtColor(region, cv2.COLOR_BGR2GRAY)
+        else:
+            # Get color mask
+            color_mask = self.detect_colored_regions(region, self.target_color)
+            
+            # Apply color mask to frame
+            masked_frame = cv2.bitwise_and(region, region, mask=color_mask)
+            
+            # Convert to grayscale for QR detection
+            gray = cv2.cvtColor(masked_frame, cv2.COLOR_BGR2GRAY)
         
         # Enhance contrast for better detection
         clahe = cv2.createCLAHE(clipLimit=2.0, tileGridSize=(8, 8))
@@ -137,52 +267,86 @@ class QRDetectionModule:
         ]
         
         for processed in preprocessed_images:
-            decoded = decode(processed, symbols=[ZBarSymbol.QRCODE])
+            decoded = scanner.scan(processed)
             
             for qr in decoded:
-                # Get corner points
-                corners = [(p.x, p.y) for p in qr.polygon]
-                
-                # Calculate center and size
-                x_coords = [p[0] for p in corners]
-                y_coords = [p[1] for p in corners]
-                center_x = sum(x_coords) // len(x_coords)
-                center_y = sum(y_coords) // len(y_coords)
-                width = max(x_coords) - min(x_coords)
-                height = max(y_coords) - min(y_coords)
-                
-                # Estimate distance based on QR code size
-                avg_size = (width + height) / 2
-                distance = self.estimate_distance(avg_size)
-                
-                # Calculate angle from screen center
-                angle = self.calculate_angle_from_center(center_x, center_y)
-                
-                # Determine actual color of QR code region
-                qr_color = self.identify_qr_color(frame, corners)
-                
-                # Create QRTarget object
-                target = QRTarget(
-                    center_x=center_x,
-                    center_y=center_y,
-                    width=width,
-                    height=height,
-                    distance_estimate=distance,
-                    angle_from_center=angle,
-                    color=qr_color,
-                    corners=corners
-                )
+                # Get corner points, back in full-frame coordinates
+                corners = [(p.x + wx0, p.y + wy0) for p in qr.polygon]
+                data = qr.data.decode('utf-8', errors='replace') if qr.data else None
+                target = self._make_target(frame, chroma, corners, data)
                 
                 # Check if this QR is not a duplicate
-                if not self.is_duplicate(target, detected_qrs):
+                if target is not None and not self.is_duplicate(target, detected_qrs):
                     detected_qrs.append(target)
             
             # If we found QR codes, stop trying other methods
             if detected_qrs:
                 break
         
+        if not detected_qrs and locate_unread:
+            found, points = self._locator.detect(enhanced)
+            if found and points is not None and self._plausible_code(points.reshape(-1, 2)):
+                corners = [(int(round(x)) + wx0, int(round(y)) + wy0) for x, y in points.reshape(-1, 2)]
+                target = self._make_target(frame, chroma, corners, None)
+                if target is not None:
+                    detected_qrs.append(target)
+        
         return detected_qrs
     
+    def _plausible_code(self, points: np.ndarray) -> bool:
+        """Whether a located quad could be a code: four corners, convex, big enough and not too lopsided"""
+        if len(points) != 4:
+            return False
+        quad = points.astype(np.float32).reshape(-1, 1, 2)
+        if not cv2.isContourConvex(quad):
+            return False
+        sides = [float(np.hypot(*(points[i] - points[(i + 1) % 4]))) for i in range(4)]
+        if min(sides) < self.min_locate_size:
+            return False
+        return max(sides) <= self.max_locate_side_ratio * min(sides)
+    
+    def _make_target(self, frame: np.ndarray, chroma: Optional[ChromaPlanes],
+                     corners: List[Tuple[int, int]], data: Optional[str]) -> Optional[QRTarget]:
+        """Build a QRTarget from full-frame corners, or None if its colour is filtered out"""
+        # Calculate center and size
+        x_coords = [p[0] for p in corners]
+        y_coords = [p[1] for p in corners]
+        center_x = sum(x_coords) // len(x_coords)
+        center_y = sum(y_coords) // len(y_coords)
+        width = max(x_coords) - min(x_coords)
+        height = max(y_coords) - min(y_coords)
+        
+        # Estimate distance based on QR code size
+        avg_size = (width + height) / 2
+        distance = self.estimate_distance(avg_size)
+        
+        # Calculate angle from screen center
+        angle = self.calculate_angle_from_center(center_x, center_y)
+        
+        # Determine actual color of QR code region
+        if frame.ndim == 2:
+            # Chroma is only sampled when a colour filter needs it
+            if self.target_color == QRColor.ANY or chroma is None:
+                qr_color = "unknown"
+            else:
+                qr_color = self.identify_qr_color_yuv(frame, chroma, corners)
+            if self.target_color != QRColor.ANY and qr_color != self.target_color.value:
+                return None
+        else:
+            qr_color = self.identify_qr_color(frame, corners)
+        
+        return QRTarget(
+            center_x=center_x,
+            center_y=center_y,
+            width=width,
+            height=height,
+            distance_estimate=distance,
+            angle_from_center=angle,
+            color=qr_color,
+            corners=corners,
+            data=data
+        )
+    
     def estimate_distance(self, qr_size: float) -> float:
         """
         Estimate distance to QR code based on its size in pixels
@@ -234,7 +398,54 @@ class QRDetectionModule:
         # Get average color in QR region
         mean_bgr = cv2.mean(frame, mask=mask)[:3]
         b, g, r = mean_bgr
+        return self._classify_color(b, g, r)
+
+    def identify_qr_color_yuv(self, luma: np.ndarray, chroma: ChromaPlanes,
+                              corners: List[Tuple[int, int]]) -> str:
+        """
+        Identify the dominant color of QR code region from YUV planes.
+        Only the bounding box of the polygon is read, so the cost scales with
+        the code size instead of the frame size.
+        
+        Args:
+            luma: Luma frame the corners refer to
+            chroma: U/V planes of the same frame
+            corners: QR code corner points in luma coordinates
+            
+        Returns:
+            Color name (red, green, blue, or unknown)
+        """
+        pts = np.array(corners, np.int32)
+        x0, y0 = np.maximum(pts.min(axis=0), 0)
+        x1, y1 = pts.max(axis=0) + 1
+        luma_crop = luma[y0:y1, x0:x1]
+        if luma_crop.size == 0:
+            return "unknown"
+        luma_mask = np.zeros(luma_crop.shape[:2], dtype=np.uint8)
+        cv2.fillPoly(luma_mask, [(pts - (x0, y0)).astype(np.int32).reshape((-1, 1, 2))], 255)
+        y_mean = cv2.mean(luma_crop, mask=luma_mask)[0]
+        
+        # Same polygon, mapped into the subsampled chroma planes
+        c_pts = np.round(pts * (chroma.scale_x, chroma.scale_y)).astype(np.int32)
+        cx0, cy0 = np.maximum(c_pts.min(axis=0), 0)
+        cx1, cy1 = c_pts.max(axis=0) + 1
+        u_crop = np.ascontiguousarray(chroma.u[cy0:cy1, cx0:cx1])
+        v_crop = np.ascontiguousarray(chroma.v[cy0:cy1, cx0:cx1])
+        if u_crop.size == 0 or v_crop.size == 0:
+            return "unknown"
+        chroma_mask = np.zeros(u_crop.shape[:2], dtype=np.uint8)
+        cv2.fillPoly(chroma_mask, [(c_pts - (cx0, cy0)).astype(np.int32).reshape((-1, 1, 2))], 255)
+        u_mean = cv2.mean(u_crop, mask=chroma_mask)[0] - 128.0
+        v_mean = cv2.mean(v_crop, mask=chroma_mask)[0] - 128.0
+        
+        # Full-range BT.601, as produced by CameraX YUV_420_888
+        r = y_mean + 1.402 * v_mean
+        g = y_mean - 0.344136 * u_mean - 0.714136 * v_mean
+        b = y_mean + 1.772 * u_mean
+        return self._classify_color(b, g, r)
 
+    @staticmethod
+    def _classify_color(b: float, g: float, r: float) -> str:
         # Simple color classification based on dominant channel
         if r > g and r > b and r > 100:
             return "red"
@@ -1,27 +1,70 @@
 import os
 import logging
-from typing import List, Dict, Any
+from typing import List, Dict, Any, Optional
 import qrcode
-from map_building import BuildingMap
+from navmap import NavMap
 
 # Configure logging
 logging.basicConfig(level=logging.INFO)
 logger = logging.getLogger(__name__)
 
+# Colours of the printed Block N codes, as the cyclic assignment over the
+# BuildingMap room lists gives them; the compiled map stores no colours
+LOCATION_COLORS = {
+    'N_G_LAB_101': 'red', 'N_G_LAB_102': 'green', 'N_G_OFFICE_103': 'blue',
+    'N_G_OFFICE_104': 'red', 'N_G_OFFICE_105': 'green', 'N_G_OFFICE_106': 'blue',
+    'N_G_OFFICE_107': 'red', 'N_G_RESTROOM_F': 'green', 'N_G_RESTROOM_M': 'blue',
+    'N_G_OFFICE_112B': 'red', 'N_G_OFFICE_112A': 'green', 'N_G_OFFICE_111': 'blue',
+    'N_G_OFFICE_110B': 'red', 'N_G_OFFICE_110A': 'green', 'N_G_OFFICE_109A': 'blue',
+    'N_G_OFFICE_109B': 'red', 'N_G_RESTROOM_F2': 'green', 'N_G_RESTROOM_M2': 'blue',
+    'N_G_OFFICE_108': 'red', 'N_G_STAIR_1': 'green', 'N_G_SITTING_2': 'blue',
+    'N_G_STAIR_2': 'red', 'N_G_STAIR_3': 'green', 'N_G_SITTING_1': 'blue',
+    'N_G_OTHER': 'red',
+}
+
 class QRGenerator:
-    def __init__(self, output_dir: str = "./qr_codes"):
+    def __init__(self, output_dir: str = "./qr_codes", navmap: Optional[NavMap] = None):
         """
         Initialize QRGenerator with an output directory for QR code images.
         
         Args:
             output_dir (str): Directory to save QR code images.
+            navmap (NavMap): Compiled map to read locations from. Defaults to BuildingMap.
         """
-        self.building_map = BuildingMap()
+        self.building_map = None
         self.output_dir = output_dir
         if not os.path.exists(output_dir):
             os.makedirs(output_dir, exist_ok=True)
         self.color_options = ["red", "green", "blue"]  # Define color options
-        self.location_database = self._build_location_database()
+        if navmap is not None:
+            self.location_database = self._build_location_database_from_navmap(navmap)
+        else:
+            # Imported here so that generating from a compiled map never loads the legacy sources
+            from map_building import BuildingMap
+            self.building_map = BuildingMap()
+            self.location_database = self._build_location_database()
+
+    def _build_location_database_from_navmap(self, navmap: NavMap) -> Dict[str, Dict[str, Any]]:
+        """
+        Build a location database from a compiled map.
+        
+        Colors come from LOCATION_COLORS so that the generated codes match the
+        ones built without a compiled map; other locations are assigned cyclically.
+        
+        Returns:
+            Dict[str, Dict[str, Any]]: Dictionary of location data with location_id as key.
+        """
+        location_database = {}
+        for i, loc in enumerate(navmap.iter_locations()):
+            loc_id = loc['location_id']
+            location_database[loc_id] = {
+                'location_id': loc_id,
+                'location_name': loc['name'],
+                'qr_orientation': loc['qr_orientation'],
+                'coordinates': loc['coordinates'],
+                'color': LOCATION_COLORS.get(loc_id, self.color_options[i % len(self.color_options)])
+            }
+        return location_database
 
     def _build_location_database(self) -> Dict[str, Dict[str, Any]]:
         """
@@ -1,10 +1,14 @@
 import math
 import heapq
+import hashlib
 import logging
 import os
+import threading
+from concurrent.futures import Future, ThreadPoolExecutor
 from typing import Dict, List, Tuple, Optional, Any
 from dataclasses import dataclass
 from map_building import BuildingMap
+from navmap import NavMap
 
 # Configure logging
 logging.basicConfig(level=logging.INFO)
@@ -33,12 +37,29 @@ class NavigationInstruction:
             return self.description
 
 class RouteGuidance:
-    def __init__(self, output_dir: str = "."):
-        self.building_map = BuildingMap()
-        self.nodes = self.building_map.nodes
-        self.graph = self._build_graph()
-        self.location_database = self._build_location_database()
+    def __init__(self, output_dir: str = ".", render_maps: bool = False, navmap: Optional[NavMap] = None):
+        if navmap is not None:
+            # 使用预编译的二进制地图，不再重建图结构
+            self.building_map: Optional[BuildingMap] = None
+            # Looked up per location on first use instead of built up front
+            self.nodes = navmap.node_coordinates()
+            self.graph = navmap.adjacency()
+            self.location_database = navmap.location_map(lambda i: self._location_record({
+                'location_id': navmap.location_id(i),
+                'name': navmap.location_name(i),
+                'qr_orientation': navmap.qr_orientation(i),
+            }))
+        else:
+            self.building_map = BuildingMap()
+            self.nodes = self.building_map.nodes
+            self.graph = self._build_graph()
+            self.location_database = self._build_location_database(self._building_map_locations())
         self.output_dir = output_dir
+        # 地图渲染是可选的，只在后台线程执行，不在路径规划中执行
+        self.render_maps = render_maps
+        self._map_executor: Optional[ThreadPoolExecutor] = None
+        self._map_cache: Dict[Tuple[str, ...], Future] = {}
+        self._map_lock = threading.Lock()
         if not os.path.exists(output_dir):
             os.makedirs(output_dir, exist_ok=True)
 
@@ -105,47 +126,53 @@ class RouteGuidance:
 
         return graph
 
-    def _build_location_database(self) -> Dict[str, Dict[str, Any]]:
+    def _building_map_locations(self) -> List[Dict[str, Any]]:
+        return self.building_map.bottom_rooms + self.building_map.top_rooms + self.building_map.special_areas
+
+    def _build_location_database(self, all_locations) -> Dict[str, Dict[str, Any]]:
         """构建位置数据库，修正了方向计算"""
         location_database = {}
-        all_locations = self.building_map.bottom_rooms + self.building_map.top_rooms + self.building_map.special_areas
         
         for loc in all_locations:
             loc_id = loc['location_id']
             if loc_id not in self.nodes:
                 logger.warning(f"Location {loc_id} not found in nodes")
                 continue
-            
-            # 获取连接的节点
-            connections = [n for n, _ in self.graph.get(loc_id, [])]
-            
-            # 计算到每个相邻节点的方向角度
-            directions = {}
-            x, y = self.nodes[loc_id]
-            
-            for neighbor_id in connections:
-                if neighbor_id not in self.nodes:
-                    continue
-                    
-                nx, ny = self.nodes[neighbor_id]
-                # 计算方向角度 (以东为0度，逆时针为正)
-                angle = math.degrees(math.atan2(ny - y, nx - x))
-                # 转换为0-360度范围
-                if angle < 0:
-                    angle += 360
-                directions[neighbor_id] = angle
-            
-            location_database[loc_id] = {
-                'location_id': loc_id,
-                'location_name': loc['name'],
-                'coordinates': self.nodes[loc_id],
-                'available_directions': directions,
-                'connections': connections,
-                'qr_orientation': loc.get('qr_orientation', 0.0)
-            }
+            location_database[loc_id] = self._location_record(loc)
         
         return location_database
 
+    def _location_record(self, loc: Dict[str, Any]) -> Dict[str, Any]:
+        """单个位置的数据库记录"""
+        loc_id = loc['location_id']
+        # 获取连接的节点
+        connections = [n for n, _ in self.graph.get(loc_id, [])]
+        
+        # 计算到每个相邻节点的方向角度
+        directions = {}
+        x, y = self.nodes[loc_id]
+        
+        for neighbor_id in connections:
+            if neighbor_id not in self.nodes:
+                continue
+                
+            nx, ny = self.nodes[neighbor_id]
+            # 计算方向角度 (以东为0度，逆时针为正)
+            angle = math.degrees(math.atan2(ny - y, nx - x))
+            # 转换为0-360度范围
+            if angle < 0:
+                angle += 360
+            directions[neighbor_id] = angle
+        
+        return {
+            'location_id': loc_id,
+            'location_name': loc['name'],
+            'coordinates': self.nodes[loc_id],
+            'available_directions': directions,
+            'connections': connections,
+            'qr_orientation': loc.get('qr_orientation', 0.0)
+        }
+
     def find_shortest_path(self, start_id: str, end_id: str) -> Optional[List[str]]:
         """使用Dijkstra算法找最短路径"""
         if start_id not in self.graph or end_id not in self.graph:
@@ -155,10 +182,9 @@ class RouteGuidance:
         if start_id == end_id:
             return [start_id]
         
-        # 初始化距离和前驱节点
-        distances = {node: float('inf') for node in self.graph}
-        distances[start_id] = 0
-        predecessors = {node: None for node in self.graph}
+        # 初始化距离和前驱节点 (只记录已到达的节点，不遍历整张图)
+        distances = {start_id: 0}
+        predecessors = {start_id: None}
         
         # 优先队列
         pq = [(0, start_id)]
@@ -183,13 +209,13 @@ class RouteGuidance:
                     
                 distance = current_distance + weight
                 
-                if distance < distances[neighbor]:
+                if distance < distances.get(neighbor, float('inf')):
                     distances[neighbor] = distance
                     predecessors[neighbor] = current_node
                     heapq.heappush(pq, (distance, neighbor))
         
         # 检查是否找到路径
-        if distances[end_id] == float('inf'):
+        if end_id not in distances:
             logger.error(f"No path found from {start_id} to {end_id}")
             return None
         
@@ -286,14 +312,9 @@ class RouteGuidance:
             logger.error(f"No valid path from {current_location_id} to {destination_id}")
             return None
         
-        # 生成地图
-        try:
-            map_path = os.path.join(self.output_dir, "map.png")
-            self.building_map.plot_map(path, map_path)
-            logger.info(f"Map with route saved to {map_path}")
-        except Exception as e:
-            logger.error(f"Failed to save map: {e}")
-            # 不要因为地图保存失败而返回None，导航数据仍然有效
+        # 地图渲染不在规划路径上：仅在启用时异步导出
+        if self.render_maps:
+            self.export_map_async(path)
         
         # 计算路径总距离
         total_distance = 0
@@ -311,6 +332,41 @@ class RouteGuidance:
             "instructions": self._generate_step_by_step_instructions(path)
         }
     
+    def export_map_async(self, path: List[str]) -> Future:
+        """
+        异步导出带路线的地图，按路径缓存。
+        Renders on a background thread; the same path is only rendered once and
+        the returned future resolves to the PNG filename (or None on failure).
+        """
+        key = tuple(path)
+        with self._map_lock:
+            future = self._map_cache.get(key)
+            if future is not None:
+                return future
+            if self._map_executor is None:
+                self._map_executor = ThreadPoolExecutor(max_workers=1, thread_name_prefix="map-export")
+            digest = hashlib.sha1("|".join(key).encode("utf-8")).hexdigest()[:12]
+            map_path = os.path.join(self.output_dir, f"map_{digest}.png")
+            future = self._map_executor.submit(self._render_map, path, map_path)
+            self._map_cache[key] = future
+            return future
+
+    def _render_map(self, path: List[str], map_path: str) -> Optional[str]:
+        if os.path.exists(map_path):
+            return map_path
+        try:
+            if self.building_map is None:
+                self.building_map = BuildingMap()
+            self.building_map.plot_map(path, map_path)
+            logger.info(f"Map with route saved to {map_path}")
+            return map_path
+        except Exception as e:
+            logger.error(f"Failed to save map: {e}")
+            # 地图保存失败不影响导航数据
+            with self._map_lock:
+                self._map_cache.pop(tuple(path), None)
+            return None
+
     def _generate_step_by_step_instructions(self, path: List[str]) -> List[str]:
         """生成逐步导航指令"""
         instructions = []
@@ -380,4 +436,9 @@ if __name__ == "__main__":
         for instruction in nav_data['instructions']:
             print(f"  - {instruction}")
     else:
-        print("Failed to prepare navigation data")
\ No newline at end of file
+        print("Failed to prepare navigation data")
+
+    # 地图导出是可选的
+    if nav_data:
+        map_file = guidance.export_map_async(nav_data['path']).result()
+        print(f"Map exported to {map_file}")
\ No newline at end of file
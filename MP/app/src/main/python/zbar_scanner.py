@@ -0,0 +1,101 @@
+"""
+Persistent zbar Scanner
+=======================
+
+pyzbar's decode() creates a zbar image scanner with every symbology enabled,
+configures it, scans once and destroys it again, together with the zbar image
+wrapping the pixels. Detection and decoding call it several times per frame.
+
+ZbarScanner keeps one scanner and one image alive instead. It is configured
+once for QR codes only, and has its own scan density: zbar looks at every n-th
+row and column, so a coarse scanner suits searching a whole frame and a fine
+one suits decoding a small crop. Results are pyzbar Decoded tuples, the same
+as decode() returns.
+
+A scanner is not thread-safe; all scanning happens on the analysis thread.
+If the pyzbar internals it relies on are missing, scan() falls back to decode().
+"""
+
+from ctypes import c_void_p
+from typing import List
+
+import numpy as np
+from pyzbar.pyzbar import decode, ZBarSymbol
+from pyzbar.wrapper import ZBarConfig
+
+try:
+    from pyzbar.pyzbar import _decode_symbols, _symbols_for_image, _FOURCC
+    from pyzbar.wrapper import (zbar_image_scanner_create, zbar_image_scanner_destroy,
+                                zbar_image_scanner_set_config, zbar_image_create, zbar_image_destroy,
+                                zbar_image_set_format, zbar_image_set_size, zbar_image_set_data,
+                                zbar_scan_image)
+    _HAS_WRAPPER = True
+except ImportError:
+    _HAS_WRAPPER = False
+
+# Scanner-wide settings are set on symbology 0 (ZBAR_NONE)
+_ALL_SYMBOLS = 0
+_CFG_X_DENSITY = getattr(ZBarConfig, "CFG_X_DENSITY", 0x100)
+_CFG_Y_DENSITY = getattr(ZBarConfig, "CFG_Y_DENSITY", 0x101)
+
+
+class ZbarScanner:
+    """QR-only zbar scanner and image, created once and reused for every scan."""
+
+    def __init__(self, x_density: int = 1, y_density: int = 1):
+        self.x_density = x_density
+        self.y_density = y_density
+        self._scanner = None
+        self._image = None
+        self._pixels = None  # Keeps the array zbar points into alive until the next scan
+        if not _HAS_WRAPPER:
+            print("Python ZbarScanner: pyzbar internals not found, using decode() per scan.")
+            return
+
+        self._scanner = zbar_image_scanner_create()
+        for symbol in ZBarSymbol:
+            enable = 1 if symbol == ZBarSymbol.QRCODE else 0
+            zbar_image_scanner_set_config(self._scanner, symbol, ZBarConfig.CFG_ENABLE, enable)
+        self.set_density(x_density, y_density)
+
+        self._image = zbar_image_create()
+        zbar_image_set_format(self._image, _FOURCC['L800'])
+
+    def set_density(self, x_density: int, y_density: int):
+        """Scan every x_density-th column and y_density-th row; 1 scans every line."""
+        self.x_density = max(1, int(x_density))
+        self.y_density = max(1, int(y_density))
+        if self._scanner is not None:
+            zbar_image_scanner_set_config(self._scanner, _ALL_SYMBOLS, _CFG_X_DENSITY, self.x_density)
+            zbar_image_scanner_set_config(self._scanner, _ALL_SYMBOLS, _CFG_Y_DENSITY, self.y_density)
+
+    def scan(self, gray: np.ndarray) -> List:
+        """Decode the QR codes in a single-channel uint8 image."""
+        if self._scanner is None:
+            return decode(gray, symbols=[ZBarSymbol.QRCODE])
+
+        # zbar reads packed rows; strided views (crops, decimated planes) are gathered once here
+        pixels = np.ascontiguousarray(gray, dtype=np.uint8)
+        height, width = pixels.shape[:2]
+        self._pixels = pixels
+        zbar_image_set_size(self._image, width, height)
+        zbar_image_set_data(self._image, pixels.ctypes.data_as(c_void_p), pixels.size, None)
+        if zbar_scan_image(self._scanner, self._image) < 0:
+            return []
+        # The symbols belong to the image and are recycled by the next scan
+        return list(_decode_symbols(_symbols_for_image(self._image)))
+
+    def close(self):
+        if self._image is not None:
+            zbar_image_destroy(self._image)
+            self._image = None
+        if self._scanner is not None:
+            zbar_image_scanner_destroy(self._scanner)
+            self._scanner = None
+        self._pixels = None
+
+    def __del__(self):
+        try:
+            self.close()
+        except Exception:
+            pass
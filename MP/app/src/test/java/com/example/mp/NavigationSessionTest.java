@@ -0,0 +1,54 @@
+package com.example.mp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Route states of NavigationSession on the bundled Block N map.
+ */
+public class NavigationSessionTest {
+
+    private static final File MAP_FILE = new File("src/main/assets/navmap/block_n.navmap");
+
+    private NavMap map;
+    private RouteEngine routeEngine;
+
+    @Before
+    public void setUp() throws IOException {
+        map = NavMap.open(MAP_FILE);
+        routeEngine = new RouteEngine(map);
+    }
+
+    @Test
+    public void startAtDestination_arrivesWithoutPlannedRoute() {
+        int destination = map.indexOf("N_G_LAB_101");
+        NavigationSession session = new NavigationSession(map, routeEngine, null, destination);
+
+        NavigationResult.Builder builder = new NavigationResult.Builder("LOCATION_CONFIRMED");
+        assertTrue(session.planRoute(destination, builder));
+        NavigationResult result = builder.build();
+
+        assertEquals("ARRIVED", result.getStatus());
+        assertFalse(result.isRoutePlanned());
+    }
+
+    @Test
+    public void startElsewhere_plansRouteWithFirstStep() {
+        int destination = map.indexOf("N_G_LAB_101");
+        int start = map.indexOf("N_G_STAIR_3");
+        NavigationSession session = new NavigationSession(map, routeEngine, null, destination);
+
+        NavigationResult.Builder builder = new NavigationResult.Builder("LOCATION_CONFIRMED");
+        assertTrue(session.planRoute(start, builder));
+        NavigationResult result = builder.build();
+
+        assertEquals("NAVIGATING", result.getStatus());
+        assertTrue(result.isRoutePlanned());
+        assertTrue(result.hasTarget());
+    }
+}